@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Locale;
+import java.util.Optional;
 import java.util.Properties;
 
 /**
@@ -108,10 +109,93 @@ public class Configuration {
         return properties.getProperty("us.askplatyp.kb.lucene.lucene.directory", "data");
     }
 
+    public boolean isCompactStorageEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("us.askplatyp.kb.lucene.lucene.compactStorage", "false"));
+    }
+
+    public double getBulkLoadRAMBufferSize() {
+        return Double.parseDouble(properties.getProperty("us.askplatyp.kb.lucene.lucene.bulkLoadRAMBufferSize", "512"));
+    }
+
     public URI getHttpBaseURI() {
         return URI.create(properties.getProperty("us.askplatyp.kb.lucene.http.uri", "http://localhost:4567/"));
     }
 
+    public int getLoadingThreads() {
+        return Integer.parseInt(properties.getProperty(
+                "us.askplatyp.kb.lucene.loading.threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())
+        ));
+    }
+
+    public int getLoadingQueueSize() {
+        return Integer.parseInt(properties.getProperty("us.askplatyp.kb.lucene.loading.queueSize", "256"));
+    }
+
+    public long getCheckpointInterval() {
+        return Long.parseLong(properties.getProperty("us.askplatyp.kb.lucene.loading.checkpointInterval", "1000000"));
+    }
+
+    public boolean isSinglePassLoadingEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("us.askplatyp.kb.lucene.loading.singlePass", "false"));
+    }
+
+    public boolean isTrimmedParsingEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("us.askplatyp.kb.lucene.loading.trimmedParsing", "true"));
+    }
+
+    public boolean isBzip2DumpsEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("us.askplatyp.kb.lucene.loading.bzip2Dumps", "false"));
+    }
+
+    public boolean isBlueGreenLoadingEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("us.askplatyp.kb.lucene.loading.blueGreen", "false"));
+    }
+
+    public int getEnrichmentThreads() {
+        return Integer.parseInt(properties.getProperty("us.askplatyp.kb.lucene.enrichment.threads", "16"));
+    }
+
+    public long getEnrichmentTimeout() {
+        return Long.parseLong(properties.getProperty("us.askplatyp.kb.lucene.enrichment.timeout", "2000"));
+    }
+
+    public long getKartographerBatchWindow() {
+        return Long.parseLong(properties.getProperty("us.askplatyp.kb.lucene.kartographer.batchWindow", "20"));
+    }
+
+    public Optional<String> getCacheFile() {
+        return Optional.ofNullable(properties.getProperty("us.askplatyp.kb.lucene.cache.file"));
+    }
+
+    public int getCacheSize() {
+        return Integer.parseInt(properties.getProperty("us.askplatyp.kb.lucene.cache.size", "16384"));
+    }
+
+    public long getCacheStaleTime() {
+        return Long.parseLong(properties.getProperty("us.askplatyp.kb.lucene.cache.staleTime", "86400"));
+    }
+
+    public long getContinueTimeToLive() {
+        return Long.parseLong(properties.getProperty("us.askplatyp.kb.lucene.search.continueTtl", "600"));
+    }
+
+    public int getSearchCacheSize() {
+        return Integer.parseInt(properties.getProperty("us.askplatyp.kb.lucene.cache.search.size", "4096"));
+    }
+
+    public long getSummaryCacheTimeToLive() {
+        return Long.parseLong(properties.getProperty("us.askplatyp.kb.lucene.cache.summary.ttl", "86400"));
+    }
+
+    public long getShapeCacheTimeToLive() {
+        return Long.parseLong(properties.getProperty("us.askplatyp.kb.lucene.cache.shape.ttl", "604800"));
+    }
+
+    public long getNegativeCacheTimeToLive() {
+        return Long.parseLong(properties.getProperty("us.askplatyp.kb.lucene.cache.negative.ttl", "86400"));
+    }
+
     public String getWikidataDirectory() {
         return properties.getProperty("us.askplatyp.kb.lucene.wikidata.directory", System.getProperty("user.dir"));
     }
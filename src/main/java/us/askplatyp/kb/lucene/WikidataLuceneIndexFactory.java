@@ -20,26 +20,38 @@ package us.askplatyp.kb.lucene;
 import org.glassfish.hk2.api.Factory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorBroker;
 import org.wikidata.wdtk.dumpfiles.DumpContentType;
 import org.wikidata.wdtk.dumpfiles.DumpProcessingController;
 import org.wikidata.wdtk.dumpfiles.MwDumpFile;
 import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFileManager;
 import us.askplatyp.kb.lucene.lucene.LuceneIndex;
 import us.askplatyp.kb.lucene.lucene.LuceneLoader;
+import us.askplatyp.kb.lucene.wikidata.Bzip2JsonDumpFile;
+import us.askplatyp.kb.lucene.wikidata.ParallelEntityDocumentProcessor;
+import us.askplatyp.kb.lucene.wikidata.ParallelJsonDumpReader;
+import us.askplatyp.kb.lucene.wikidata.ResumableEntityDocumentProcessor;
 import us.askplatyp.kb.lucene.wikidata.WikidataResourceProcessor;
 import us.askplatyp.kb.lucene.wikidata.WikidataTypeHierarchy;
+import us.askplatyp.kb.lucene.wikidata.mapping.TypeMapper;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -49,7 +61,10 @@ public class WikidataLuceneIndexFactory implements Factory<LuceneIndex> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WikidataLuceneIndexFactory.class);
     private static final LastProcessedDumpInfo LAST_PROCESSED_DUMP_INFO = new LastProcessedDumpInfo();
+    private static final String CURRENT_GENERATION_FILE = "current-generation";
+    private static final String GENERATION_PREFIX = "generation-";
 
+    private static Path rootDirectory;
     private static LuceneIndex index;
     private static WikidataTypeHierarchy typeHierarchy;
 
@@ -57,7 +72,9 @@ public class WikidataLuceneIndexFactory implements Factory<LuceneIndex> {
         if (index != null) {
             throw new IOException("Wikidata Lucene index already initialized");
         }
-        index = new LuceneIndex(Paths.get(luceneDirectoryPath));
+        rootDirectory = Paths.get(luceneDirectoryPath);
+        index = new LuceneIndex(getCurrentGenerationPath());
+        deleteUnusedGenerations();
         typeHierarchy = new WikidataTypeHierarchy(Paths.get(luceneDirectoryPath, "wd-builder"));
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
@@ -71,43 +88,274 @@ public class WikidataLuceneIndexFactory implements Factory<LuceneIndex> {
     }
 
     private static void loadData() throws IOException {
-        DumpProcessingController dumpProcessingController = new DumpProcessingController("wikidatawiki");
-        dumpProcessingController.setDownloadDirectory(Configuration.getInstance().getWikidataDirectory());
-        dumpProcessingController.setLanguageFilter(WikidataResourceProcessor.SUPPORTED_LANGUAGES);
-        dumpProcessingController.registerEntityDocumentProcessor(typeHierarchy.getUpdateProcessor(), null, true);
+        DumpProcessingController dumpProcessingController = buildDumpProcessingController();
+        EntityDocumentProcessorBroker dumpProcessor = new EntityDocumentProcessorBroker();
+        //The revision dumps keep the type hierarchy up to date
+        dumpProcessor.registerEntityDocumentProcessor(typeHierarchy.getUpdateProcessor());
 
-        //We load first the type hierarchy
-        dumpProcessingController.processMostRecentJsonDump();
+        WikidataResourceProcessor wikidataResourceProcessor = buildResourceProcessor(dumpProcessingController, index);
+        ResumableEntityDocumentProcessor resourceProcessor = new ResumableEntityDocumentProcessor(
+                parallelize(wikidataResourceProcessor),
+                new ResumableEntityDocumentProcessor.CheckpointStore() {
+                    @Override
+                    public OptionalLong getCheckpoint(String dumpId) {
+                        return index.getCheckpoint(dumpId);
+                    }
 
-        //We do now the regular loading
-        dumpProcessingController.registerEntityDocumentProcessor(
-                new WikidataResourceProcessor(new LuceneLoader(index), dumpProcessingController.getSitesInformation(), typeHierarchy),
-                null, true
+                    @Override
+                    public void saveCheckpoint(String dumpId, long position) throws IOException {
+                        typeHierarchy.commit();
+                        index.saveCheckpoint(dumpId, position);
+                    }
+                },
+                Configuration.getInstance().getCheckpointInterval()
         );
+        dumpProcessor.registerEntityDocumentProcessor(resourceProcessor);
+        dumpProcessingController.registerEntityDocumentProcessor(dumpProcessor, null, true);
+        Set<String> usedPropertyIds = new HashSet<>(wikidataResourceProcessor.getUsedPropertyIds());
+        usedPropertyIds.add(WikidataTypeHierarchy.SUBCLASS_OF_ID);
+        ParallelJsonDumpReader jsonDumpReader = buildJsonDumpReader(dumpProcessor, usedPropertyIds);
 
-        for (MwDumpFile dump : getNewDumpsToProcess(dumpProcessingController.getWmfDumpFileManager()).toArray(MwDumpFile[]::new)) {
-            LOGGER.info("Processing " + dump.getProjectName() + " " + dump.getDumpContentType() + " of the " + dump.getDateStamp());
+        MwDumpFile[] dumps = getNewDumpsToProcess(dumpProcessingController.getWmfDumpFileManager()).toArray(MwDumpFile[]::new);
+        boolean isFullDumpFirst = dumps.length > 0 && dumps[0].getDumpContentType() == DumpContentType.JSON;
+        boolean isBlueGreen = Configuration.getInstance().isBlueGreenLoadingEnabled() && !index.isEmpty() &&
+                isFullDumpFirst && !index.getCheckpoint(getDumpId(dumps[0])).isPresent();
+        //The first dump loaded in an empty index contains each entity only once
+        //If it has been interrupted the entities after the checkpoint are not in the index
+        boolean isBulkLoad = !LAST_PROCESSED_DUMP_INFO.isSet() && dumps.length > 0 &&
+                (index.isEmpty() || index.getCheckpoint(getDumpId(dumps[0])).isPresent());
+        //The indexes that are not served yet could have their types resolved after the loading of the full dump
+        boolean isSinglePass = Configuration.getInstance().isSinglePassLoadingEnabled() && isFullDumpFirst &&
+                (isBlueGreen || isBulkLoad);
+
+        if (!isSinglePass) {
+            loadTypeHierarchy(dumpProcessingController);
+        }
+
+        if (isBlueGreen) {
             try {
-                dumpProcessingController.processDump(dump);
-                LAST_PROCESSED_DUMP_INFO.setDateStamp(dump.getDateStamp());
-                index.refreshReaders();
+                loadNewGeneration(dumps, isSinglePass);
+                dumps = new MwDumpFile[]{};
             } catch (Exception e) {
-                LOGGER.error(e.getMessage(), e);
+                LOGGER.error("The loading of a new index generation failed, updating the current one", e);
+                if (isSinglePass) {
+                    loadTypeHierarchy(dumpProcessingController);
+                    isSinglePass = false;
+                }
+            }
+        }
+
+        if (isBulkLoad) {
+            LOGGER.info("New index: bulk loading the first dump");
+            index.startBulkLoad();
+        }
+
+        for (int i = 0; i < dumps.length; i++) {
+            boolean isTypeResolutionDeferred = isSinglePass && i == 0;
+            wikidataResourceProcessor.setTypeResolutionDeferred(isTypeResolutionDeferred);
+            try {
+                processDump(dumpProcessingController, jsonDumpReader, resourceProcessor, dumps[i], isTypeResolutionDeferred);
+            } catch (Exception e) {
+                LOGGER.error("The processing of " + getDumpId(dumps[i]) + " failed, it will be resumed at the next start", e);
+                break;
             }
         }
+        wikidataResourceProcessor.setTypeResolutionDeferred(false);
 
         registerAtThreePM(() -> {
             try {
-                MwDumpFile dump = dumpProcessingController.getMostRecentDump(DumpContentType.DAILY);
-                dumpProcessingController.processDump(dump);
-                LAST_PROCESSED_DUMP_INFO.setDateStamp(dump.getDateStamp());
-                index.refreshReaders();
+                processDump(dumpProcessingController, jsonDumpReader, resourceProcessor, dumpProcessingController.getMostRecentDump(DumpContentType.DAILY), false);
             } catch (Exception e) {
                 LOGGER.error(e.getMessage(), e);
             }
         });
     }
 
+    private static void loadTypeHierarchy(DumpProcessingController dumpProcessingController) throws IOException {
+        MwDumpFile jsonDump = withCompression(dumpProcessingController.getMostRecentDump(DumpContentType.JSON));
+        if (jsonDump != null) {
+            typeHierarchy.loadFromDump(jsonDump, Configuration.getInstance().getLoadingThreads());
+        }
+    }
+
+    /**
+     * @param resolveTypes if the dump has been loaded with the type resolution deferred
+     */
+    private static void processDump(
+            DumpProcessingController dumpProcessingController, ParallelJsonDumpReader jsonDumpReader,
+            ResumableEntityDocumentProcessor resourceProcessor, MwDumpFile dump, boolean resolveTypes
+    ) throws IOException {
+        LOGGER.info("Processing " + dump.getProjectName() + " " + dump.getDumpContentType() + " of the " + dump.getDateStamp());
+        resourceProcessor.startDump(getDumpId(dump));
+        try {
+            readDump(dumpProcessingController, jsonDumpReader, dump);
+            resourceProcessor.finishDump();
+            if (resolveTypes) {
+                resolveTypes(index, dump);
+            }
+            typeHierarchy.commit();
+            index.clearCheckpoint();
+        } catch (Exception e) {
+            resourceProcessor.interruptDump();
+            throw e;
+        } finally {
+            if (index.isBulkLoading()) {
+                index.finishBulkLoad();
+            }
+        }
+        LAST_PROCESSED_DUMP_INFO.setDateStamp(dump.getDateStamp());
+        index.refreshReaders();
+    }
+
+    /**
+     * The JSON dumps are read in parallel, the other ones by the controller
+     */
+    private static void readDump(
+            DumpProcessingController dumpProcessingController, ParallelJsonDumpReader jsonDumpReader, MwDumpFile dump
+    ) throws IOException {
+        if (dump.getDumpContentType() == DumpContentType.JSON) {
+            jsonDumpReader.processDump(dump);
+        } else {
+            dumpProcessingController.processDump(dump);
+        }
+    }
+
+    /**
+     * @param usedPropertyIds the properties whose statements are read by the processors
+     */
+    private static ParallelJsonDumpReader buildJsonDumpReader(EntityDocumentProcessor dumpProcessor, Set<String> usedPropertyIds) {
+        ParallelJsonDumpReader jsonDumpReader = new ParallelJsonDumpReader(
+                dumpProcessor, WikidataResourceProcessor.SUPPORTED_LANGUAGES, Configuration.getInstance().getLoadingThreads()
+        );
+        if (Configuration.getInstance().isTrimmedParsingEnabled()) {
+            jsonDumpReader.setItemPropertyFilter(usedPropertyIds);
+        }
+        return jsonDumpReader;
+    }
+
+    /**
+     * Replaces the raw types of the documents loaded from the given dump now that its type hierarchy is known
+     */
+    private static void resolveTypes(LuceneIndex targetIndex, MwDumpFile dump) throws IOException {
+        LOGGER.info("Resolving the types of the entities of the " + getDumpId(dump));
+        typeHierarchy.markAsLoadedFrom(dump);
+        new LuceneLoader(targetIndex).resolveRawTypes(new TypeMapper(typeHierarchy)::resolveTypes);
+    }
+
+    private static String getDumpId(MwDumpFile dump) {
+        return dump.getProjectName() + "-" + dump.getDumpContentType() + "-" + dump.getDateStamp();
+    }
+
+    private static DumpProcessingController buildDumpProcessingController() throws IOException {
+        DumpProcessingController dumpProcessingController = new DumpProcessingController("wikidatawiki");
+        dumpProcessingController.setDownloadDirectory(Configuration.getInstance().getWikidataDirectory());
+        dumpProcessingController.setLanguageFilter(WikidataResourceProcessor.SUPPORTED_LANGUAGES);
+        return dumpProcessingController;
+    }
+
+    private static WikidataResourceProcessor buildResourceProcessor(
+            DumpProcessingController dumpProcessingController, LuceneIndex targetIndex
+    ) throws IOException {
+        return new WikidataResourceProcessor(new LuceneLoader(targetIndex), dumpProcessingController.getSitesInformation(), typeHierarchy);
+    }
+
+    private static ParallelEntityDocumentProcessor parallelize(WikidataResourceProcessor resourceProcessor) {
+        return new ParallelEntityDocumentProcessor(
+                resourceProcessor,
+                Configuration.getInstance().getLoadingThreads(),
+                Configuration.getInstance().getLoadingQueueSize()
+        );
+    }
+
+    /**
+     * Builds a new index generation from the given dumps while the current one keeps being served, then switches to it
+     *
+     * @param isSinglePass if the type hierarchy should be collected during the loading of the first dump
+     */
+    private static void loadNewGeneration(MwDumpFile[] dumps, boolean isSinglePass) throws IOException {
+        Path generationPath = rootDirectory.resolve(GENERATION_PREFIX + dumps[0].getDateStamp());
+        LOGGER.info("Building the index generation " + generationPath);
+        LuceneIndex.deleteIndex(generationPath); //Leftovers of an interrupted build
+        LuceneIndex nextGeneration = new LuceneIndex(generationPath);
+
+        //A dedicated controller because the document processors registered in a controller could not be removed
+        DumpProcessingController dumpProcessingController = buildDumpProcessingController();
+        EntityDocumentProcessorBroker dumpProcessor = new EntityDocumentProcessorBroker();
+        if (isSinglePass) {
+            dumpProcessor.registerEntityDocumentProcessor(typeHierarchy.getUpdateProcessor());
+        }
+        WikidataResourceProcessor wikidataResourceProcessor = buildResourceProcessor(dumpProcessingController, nextGeneration);
+        try (ParallelEntityDocumentProcessor resourceProcessor = parallelize(wikidataResourceProcessor)) {
+            dumpProcessor.registerEntityDocumentProcessor(resourceProcessor);
+            dumpProcessingController.registerEntityDocumentProcessor(dumpProcessor, null, true);
+            Set<String> usedPropertyIds = new HashSet<>(wikidataResourceProcessor.getUsedPropertyIds());
+            if (isSinglePass) {
+                usedPropertyIds.add(WikidataTypeHierarchy.SUBCLASS_OF_ID);
+            }
+            ParallelJsonDumpReader jsonDumpReader = buildJsonDumpReader(dumpProcessor, usedPropertyIds);
+            nextGeneration.startBulkLoad();
+            for (int i = 0; i < dumps.length; i++) {
+                MwDumpFile dump = dumps[i];
+                wikidataResourceProcessor.setTypeResolutionDeferred(isSinglePass && i == 0);
+                LOGGER.info("Processing " + dump.getProjectName() + " " + dump.getDumpContentType() + " of the " + dump.getDateStamp());
+                readDump(dumpProcessingController, jsonDumpReader, dump);
+                resourceProcessor.flush();
+                if (isSinglePass && i == 0) {
+                    resolveTypes(nextGeneration, dump);
+                }
+                if (nextGeneration.isBulkLoading()) {
+                    nextGeneration.finishBulkLoad();
+                }
+            }
+
+            Path previousGenerationPath = index.getDirectoryPath();
+            index.replaceWith(nextGeneration);
+            setCurrentGeneration(generationPath);
+            LAST_PROCESSED_DUMP_INFO.setDateStamp(dumps[dumps.length - 1].getDateStamp());
+            LuceneIndex.deleteIndex(previousGenerationPath);
+        } catch (IOException | RuntimeException e) {
+            if (!index.getDirectoryPath().equals(generationPath)) {
+                nextGeneration.close();
+                LuceneIndex.deleteIndex(generationPath);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Without generation pointer the index is directly in the root directory
+     */
+    private static Path getCurrentGenerationPath() {
+        try {
+            return rootDirectory.resolve(Files.readAllLines(rootDirectory.resolve(CURRENT_GENERATION_FILE)).get(0));
+        } catch (IOException e) {
+            return rootDirectory;
+        }
+    }
+
+    private static void setCurrentGeneration(Path generationPath) throws IOException {
+        Path temporaryFile = rootDirectory.resolve(CURRENT_GENERATION_FILE + ".tmp");
+        Files.write(temporaryFile, Collections.singletonList(generationPath.getFileName().toString()));
+        Files.move(temporaryFile, rootDirectory.resolve(CURRENT_GENERATION_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Removes the generations left by an interrupted build or switch
+     */
+    private static void deleteUnusedGenerations() throws IOException {
+        if (!Files.isDirectory(rootDirectory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(rootDirectory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                if (file.getFileName().toString().startsWith(GENERATION_PREFIX) && !file.equals(index.getDirectoryPath())) {
+                    LOGGER.info("Deleting the unused index generation " + file);
+                    LuceneIndex.deleteIndex(file);
+                }
+            }
+        }
+    }
+
     private static Stream<MwDumpFile> getNewDumpsToProcess(WmfDumpFileManager dumpFileManager) {
         return getPossibleDumpsToProcess(dumpFileManager).filter(dump ->
                 dump.getDateStamp().compareTo(LAST_PROCESSED_DUMP_INFO.getDateStamp()) > 0
@@ -115,7 +363,7 @@ public class WikidataLuceneIndexFactory implements Factory<LuceneIndex> {
     }
 
     private static Stream<MwDumpFile> getPossibleDumpsToProcess(WmfDumpFileManager dumpFileManager) {
-        MwDumpFile jsonDump = dumpFileManager.findMostRecentDump(DumpContentType.JSON);
+        MwDumpFile jsonDump = withCompression(dumpFileManager.findMostRecentDump(DumpContentType.JSON));
         return Stream.concat(
                 Stream.of(jsonDump),
                 dumpFileManager.findAllRelevantRevisionDumps(true).stream()
@@ -123,6 +371,16 @@ public class WikidataLuceneIndexFactory implements Factory<LuceneIndex> {
         ).sorted(new MwDumpFile.DateComparator());
     }
 
+    /**
+     * The bzip2 version of the JSON dumps is decompressed in parallel
+     */
+    private static MwDumpFile withCompression(MwDumpFile jsonDump) {
+        if (jsonDump == null || !Configuration.getInstance().isBzip2DumpsEnabled()) {
+            return jsonDump;
+        }
+        return new Bzip2JsonDumpFile(jsonDump, Configuration.getInstance().getWikidataDirectory());
+    }
+
     private static void registerAtThreePM(Runnable runnable) {
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime threePM = LocalDate.now().atTime(15, 0);
@@ -146,6 +404,10 @@ public class WikidataLuceneIndexFactory implements Factory<LuceneIndex> {
         private static final Path STORAGE_FILE = Paths.get(Configuration.getInstance().getLuceneDirectory(), "last-wd-dump-info");
         private String dateStamp = "";
 
+        boolean isSet() {
+            return Files.exists(STORAGE_FILE);
+        }
+
         String getDateStamp() {
             if (dateStamp.isEmpty()) {
                 try {
@@ -28,8 +28,10 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Variant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Function;
 
 /**
  * @author Thomas Pellissier Tanon
@@ -40,6 +42,27 @@ class ActionUtils {
     private static final MediaType APPLICATION_JSON_LD_TYPE = MediaType.valueOf("application/ld+json");
 
     static Response jsonContentNegotiation(Request request, JsonResultBuilder<Object> resultBuilder) {
+        return negotiateAndSerialize(request, variant -> serialize(resultBuilder.buildResult(variant.getLanguage())));
+    }
+
+    /**
+     * Same as {@link #jsonContentNegotiation(Request, JsonResultBuilder)} but the serialized results are cached
+     *
+     * @param version the version of the index read by the result builder
+     * @param key     the request parameters the result depends on
+     */
+    static Response cachedJsonContentNegotiation(
+            Request request, SearchResultCache cache, long version, List<Object> key, JsonResultBuilder<Object> resultBuilder
+    ) {
+        return negotiateAndSerialize(request, variant -> {
+            List<Object> variantKey = new ArrayList<>(key);
+            variantKey.add(variant.getMediaType());
+            variantKey.add(variant.getLanguage());
+            return cache.get(version, variantKey, () -> serialize(resultBuilder.buildResult(variant.getLanguage())));
+        });
+    }
+
+    private static Response negotiateAndSerialize(Request request, Function<Variant, String> serializer) {
         List<Variant> variants = Variant
                 .mediaTypes(MediaType.APPLICATION_JSON_TYPE, APPLICATION_JSON_LD_TYPE)
                 .languages(Configuration.SUPPORTED_LOCALES)
@@ -48,7 +71,7 @@ class ActionUtils {
         if (bestResponseVariant == null) {
             return Response.notAcceptable(variants).build();
         }
-        return Response.ok(serialize(resultBuilder.buildResult(bestResponseVariant.getLanguage())), bestResponseVariant).build();
+        return Response.ok(serializer.apply(bestResponseVariant), bestResponseVariant).build();
     }
 
     private static String serialize(Object model) {
@@ -26,6 +26,7 @@ import javax.inject.Inject;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -36,6 +37,7 @@ import java.util.Locale;
 public class SearchActions {
 
     private static final String LIMIT_DEFAULT = "100";
+    private static final String AUTOCOMPLETE_LIMIT_DEFAULT = "10";
     private static final int LIMIT_MAX = 1000;
 
     @Inject
@@ -59,16 +61,64 @@ public class SearchActions {
             @Context Request request,
             @Context UriInfo uriInfo
     ) {
+        Locale inputLocale = Locale.forLanguageTag(lang);
+        int cleanedLimit = cleanLimit(limit);
+        String baseURI = getRequestBaseURI(uriInfo, query, type, inputLocale);
+        try (LuceneIndex.Reader indexReader = index.getReader()) {
+            return ActionUtils.cachedJsonContentNegotiation(
+                    request,
+                    SearchResultCache.getInstance(),
+                    indexReader.getVersion(),
+                    Arrays.asList(baseURI, queryContinue, cleanedLimit),
+                    (locale) -> {
+                        LuceneLookup luceneLookup = new LuceneLookup(indexReader);
+                        try {
+                            return (new JsonLdBuilder(luceneLookup)).buildEntitySearchResultInLanguage(luceneLookup.getResourcesForLabel(
+                                    query,
+                                    type,
+                                    inputLocale,
+                                    queryContinue,
+                                    cleanedLimit,
+                                    JsonLdBuilder.buildSimpleEntityProjection(locale)
+                            ), baseURI, locale);
+                        } catch (IOException e) {
+                            throw new InternalServerErrorException("Database error.", e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new InternalServerErrorException("Database error.", e);
+        }
+    }
+
+    @Path("autocomplete")
+    @GET
+    @ApiOperation(
+            value = "Completes the beginning of a label, e.g. while it is being typed. The entities are ordered by popularity"
+    )
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "Accept-Language", value = "The language to use for the output", defaultValue = "en", dataType = "string", paramType = "header")
+    })
+    public Response autocomplete(
+            @QueryParam("q") @ApiParam(value = "The beginning of the label", required = true, example = "Barack Ob") String query,
+            @QueryParam("type") @ApiParam(value = "An optional type filter (it uses http://schema.org/ for default namespace)", example = "Person") String type,
+            @QueryParam("lang") @DefaultValue("en") @ApiParam(value = "The query language") String lang,
+            @QueryParam("limit") @DefaultValue(AUTOCOMPLETE_LIMIT_DEFAULT) @ApiParam(value = "The number of query results to return") int limit,
+            @Context Request request,
+            @Context UriInfo uriInfo
+    ) {
+        if (query == null || query.isEmpty()) {
+            throw new BadRequestException("The q parameter should not be empty");
+        }
         return ActionUtils.jsonContentNegotiation(request, (locale) -> {
             Locale inputLocale = Locale.forLanguageTag(lang);
             try (LuceneIndex.Reader indexReader = index.getReader()) {
                 LuceneLookup luceneLookup = new LuceneLookup(indexReader);
-                return (new JsonLdBuilder(luceneLookup)).buildEntitySearchResultInLanguage(luceneLookup.getResourcesForLabel(
+                return (new JsonLdBuilder(luceneLookup)).buildEntitySearchResultInLanguage(luceneLookup.getResourcesForLabelPrefix(
                         query,
                         type,
                         inputLocale,
-                        queryContinue,
-                        cleanLimit(limit)
+                        cleanLimit(limit),
+                        JsonLdBuilder.buildSimpleEntityProjection(locale)
                 ), getRequestBaseURI(uriInfo, query, type, inputLocale), locale);
             } catch (IOException e) {
                 throw new InternalServerErrorException("Database error.", e);
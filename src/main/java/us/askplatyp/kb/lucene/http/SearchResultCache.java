@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import us.askplatyp.kb.lucene.Configuration;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the serialized search responses.
+ * <p>
+ * The entries are bound to the index version they have been computed from. When a request reads a more recent index
+ * version, i.e. after a refresh of the index readers or a switch of generation, the previous entries are dropped.
+ * The requests still reading an older version are not cached so that they do not drop the current entries.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class SearchResultCache {
+
+    private static SearchResultCache INSTANCE;
+
+    private final Cache<List<Object>, String> cache;
+    private volatile long currentVersion = Long.MIN_VALUE;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder outdatedRequests = new LongAdder();
+
+    SearchResultCache(int size) {
+        cache = CacheBuilder.newBuilder().maximumSize(size).build();
+    }
+
+    static synchronized SearchResultCache getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new SearchResultCache(Configuration.getInstance().getSearchCacheSize());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * @param version the version of the index read by the loader, increasing with the index updates
+     * @param key     the request parameters the response depends on
+     */
+    String get(long version, List<Object> key, Supplier<String> loader) {
+        requests.increment();
+        if (version > currentVersion) {
+            synchronized (this) {
+                if (version > currentVersion) {
+                    if (currentVersion != Long.MIN_VALUE) {
+                        cache.invalidateAll();
+                        invalidations.increment();
+                    }
+                    currentVersion = version;
+                }
+            }
+        }
+        if (version < currentVersion) {
+            outdatedRequests.increment();
+            misses.increment();
+            return loader.get();
+        }
+        //The version is part of the key so that an entry of a previous version added during an invalidation is never read
+        List<Object> versionedKey = new ArrayList<>(key.size() + 1);
+        versionedKey.add(version);
+        versionedKey.addAll(key);
+        try {
+            return cache.get(versionedKey, () -> {
+                misses.increment();
+                return loader.get();
+            });
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            //e.g. the WebApplicationExceptions of the loader
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("requests", requests.sum());
+        statistics.put("hits", requests.sum() - misses.sum());
+        statistics.put("misses", misses.sum());
+        statistics.put("invalidations", invalidations.sum());
+        statistics.put("outdatedRequests", outdatedRequests.sum());
+        statistics.put("size", cache.size());
+        return statistics;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.http;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import us.askplatyp.kb.lucene.wikimedia.rest.KartographerAPI;
+import us.askplatyp.kb.lucene.wikimedia.rest.WikimediaREST;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+@Path("/api/v1/statistics")
+@Api
+public class StatisticsActions {
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Returns usage statistics of the service caches")
+    public Map<String, Object> get() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("wikipediaSummaryCache", WikimediaREST.getInstance().getCacheStatistics());
+        statistics.put("geoShapeCache", KartographerAPI.getInstance().getCacheStatistics());
+        statistics.put("searchResultCache", SearchResultCache.getInstance().getStatistics());
+        return statistics;
+    }
+}
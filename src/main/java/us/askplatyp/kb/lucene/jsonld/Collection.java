@@ -19,6 +19,7 @@ package us.askplatyp.kb.lucene.jsonld;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.List;
@@ -30,10 +31,13 @@ import java.util.List;
 public class Collection<T> {
 
     private List<T> elements;
-    private long totalNumber;
+    private Long totalNumber;
 
+    /**
+     * @param totalNumber the number of items or null if it is not known exactly
+     */
     @JsonCreator
-    Collection(@JsonProperty("member") List<T> elements, @JsonProperty("totalItems") long totalNumber) {
+    Collection(@JsonProperty("member") List<T> elements, @JsonProperty("totalItems") Long totalNumber) {
         this.elements = elements;
         this.totalNumber = totalNumber;
     }
@@ -49,7 +53,8 @@ public class Collection<T> {
     }
 
     @JsonProperty("totalItems")
-    public long getTotalNumber() {
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getTotalNumber() {
         return this.totalNumber;
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.jsonld;
+
+import com.vividsolutions.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.WikimediaLanguageCodes;
+import us.askplatyp.kb.lucene.Configuration;
+import us.askplatyp.kb.lucene.model.Namespaces;
+import us.askplatyp.kb.lucene.model.Resource;
+import us.askplatyp.kb.lucene.model.value.Article;
+import us.askplatyp.kb.lucene.model.value.GeoValue;
+import us.askplatyp.kb.lucene.model.value.Image;
+import us.askplatyp.kb.lucene.wikimedia.rest.KartographerAPI;
+import us.askplatyp.kb.lucene.wikimedia.rest.WikimediaREST;
+import us.askplatyp.kb.lucene.wikimedia.rest.model.Summary;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Adds to full entities the content retrieved from Wikimedia APIs (Wikipedia article, image and geographic shape).
+ * <p>
+ * The requests are done in parallel on a bounded thread pool. If they are not done before the deadline
+ * the entity is returned without the missing content.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+public class EntityEnricher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityEnricher.class);
+    private static final int QUEUE_SIZE = 1024;
+    private static EntityEnricher INSTANCE;
+
+    private final WikimediaREST wikimediaREST;
+    private final KartographerAPI kartographerAPI;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    public EntityEnricher(WikimediaREST wikimediaREST, KartographerAPI kartographerAPI, int threads, long timeoutMillis) {
+        this.wikimediaREST = wikimediaREST;
+        this.kartographerAPI = kartographerAPI;
+        this.executor = buildExecutor(threads);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public static synchronized EntityEnricher getInstance() {
+        if (INSTANCE == null) {
+            Configuration configuration = Configuration.getInstance();
+            INSTANCE = new EntityEnricher(
+                    WikimediaREST.getInstance(),
+                    KartographerAPI.getInstance(),
+                    configuration.getEnrichmentThreads(),
+                    configuration.getEnrichmentTimeout()
+            );
+        }
+        return INSTANCE;
+    }
+
+    private static ExecutorService buildExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "entity-enricher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Optional<String> findWikipediaArticleIRI(Stream<String> IRIs, Locale locale) {
+        //TODO: support complex language codes
+        return IRIs.filter(IRI -> IRI.contains(locale.getLanguage() + ".wikipedia.org/wiki/")).findAny();
+    }
+
+    private static Article buildWikipediaArticle(String articleIRI, Summary summary) {
+        return new Article(
+                articleIRI,
+                summary.getTitle(),
+                summary.getExtract(),
+                "http://creativecommons.org/licenses/by-sa/3.0/",
+                WikimediaLanguageCodes.getLanguageCode(summary.getLanguageCode())
+        );
+    }
+
+    private static Optional<Image> buildWikipediaImage(Summary summary) {
+        return summary.getThumbnail().map(thumbnail ->
+                new Image(thumbnail.getSource(), thumbnail.getWidth(), thumbnail.getHeight()) //TODO: license
+        );
+    }
+
+    /**
+     * @return the values to add to the entity properties
+     */
+    Map<String, Object> enrich(Resource resource, Locale locale) {
+        Optional<String> wikipediaArticleIRI = findWikipediaArticleIRI(resource.getStringValuesForProperty("sameAs"), locale);
+        CompletableFuture<Optional<Summary>> summaryFuture = wikipediaArticleIRI
+                .map(articleIRI -> submit(() -> wikimediaREST.getSummary(articleIRI)))
+                .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty()));
+        //We only do geoshape lookup for Places in order to don't overload the servers
+        CompletableFuture<Optional<Geometry>> shapeFuture = resource.getTypes().anyMatch(type -> type.equals("Place"))
+                ? submit(() -> kartographerAPI.getShapeForItemId(Namespaces.expand(resource.getIRI())))
+                : CompletableFuture.completedFuture(Optional.empty());
+
+        try {
+            CompletableFuture.allOf(summaryFuture, shapeFuture).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.info("Enrichment of " + resource.getIRI() + " did not finish before the deadline");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+
+        Map<String, Object> values = new HashMap<>();
+        summaryFuture.getNow(Optional.empty()).ifPresent(summary -> {
+            values.put("detailedDescription", buildWikipediaArticle(wikipediaArticleIRI.get(), summary));
+            buildWikipediaImage(summary).ifPresent(image -> values.put("image", image));
+        });
+        shapeFuture.getNow(Optional.empty())
+                .filter(shape -> !shape.isEmpty())
+                .ifPresent(shape -> values.put("geo", GeoValue.buildGeoValue(shape)));
+        return values;
+    }
+
+    private <T> CompletableFuture<Optional<T>> submit(IOCallable<T> callable) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return Optional.of(callable.call());
+                } catch (IOException e) {
+                    LOGGER.error(e.getMessage(), e);
+                    return Optional.empty();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Too many pending enrichment requests, skipping enrichment");
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
+}
@@ -18,15 +18,10 @@
 package us.askplatyp.kb.lucene.jsonld;
 
 import com.google.common.collect.Sets;
-import com.vividsolutions.jts.geom.Geometry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.wikidata.wdtk.datamodel.interfaces.WikimediaLanguageCodes;
 import us.askplatyp.kb.lucene.model.*;
 import us.askplatyp.kb.lucene.model.value.*;
-import us.askplatyp.kb.lucene.wikimedia.rest.KartographerAPI;
-import us.askplatyp.kb.lucene.wikimedia.rest.WikimediaREST;
-import us.askplatyp.kb.lucene.wikimedia.rest.model.Summary;
 
 import java.io.IOException;
 import java.util.*;
@@ -45,56 +40,40 @@ public class JsonLdBuilder {
     private static final Schema SCHEMA = Schema.getSchema();
 
     private StorageLookup storageLookup;
+    private EntityEnricher enricher;
 
     public JsonLdBuilder(StorageLookup storageLookup) {
-        this.storageLookup = storageLookup;
+        this(storageLookup, EntityEnricher.getInstance());
     }
 
-    private static Optional<String> findWikipediaArticleIRI(Stream<String> IRIs, Locale locale) {
-        //TODO: support complex language codes
-        return IRIs.filter(IRI -> IRI.contains(locale.getLanguage() + ".wikipedia.org/wiki/")).findAny();
+    public JsonLdBuilder(StorageLookup storageLookup, EntityEnricher enricher) {
+        this.storageLookup = storageLookup;
+        this.enricher = enricher;
     }
 
-    private static Optional<Object> buildGeoValueFromKartographer(Resource resource) {
-        try {
-            //We only do geoshape lookup for Places in order to don't overload the servers
-            if (resource.getTypes().anyMatch(type -> type.equals("Place"))) {
-                Geometry shape = KartographerAPI.getInstance()
-                        .getShapeForItemId(Namespaces.expand(resource.getIRI()));
-                if (!shape.isEmpty()) {
-                    return Optional.of(GeoValue.buildGeoValue(shape));
-                }
-            }
-        } catch (IOException e) {
-            LOGGER.error(e.getMessage(), e);
-        }
-        return Optional.empty();
+    /**
+     * @return the part of the resources rendered by non full entities like search results
+     */
+    public static ResourceProjection buildSimpleEntityProjection(Locale locale) {
+        return new ResourceProjection(SIMPLE_PROPERTIES, locale);
     }
 
-    private static Article buildWikipediaArticle(String articleIRI) {
-        try {
-            Summary summary = WikimediaREST.getInstance().getSummary(articleIRI);
-            return new Article(
-                    articleIRI,
-                    summary.getTitle(),
-                    summary.getExtract(),
-                    "http://creativecommons.org/licenses/by-sa/3.0/",
-                    WikimediaLanguageCodes.getLanguageCode(summary.getLanguageCode())
-            );
-        } catch (IOException e) {
-            LOGGER.error(e.getMessage(), e);
-            return null;
+    private Map<String, Resource> getLinkedResources(Resource resource, Locale locale) {
+        Set<String> IRIs = resource.getClaims()
+                .filter(claim -> claim.getValue() instanceof ResourceValue)
+                .filter(claim -> SCHEMA.getProperty(claim.getProperty())
+                        .map(property -> property.getSimpleRange() == Schema.Range.RESOURCE)
+                        .orElse(false))
+                .map(claim -> claim.getValue().toString())
+                .collect(Collectors.toSet());
+        if (IRIs.isEmpty()) {
+            return Collections.emptyMap();
         }
-    }
-
-    private static Optional<Image> buildWikipediaImage(String articleIRI) {
         try {
-            return WikimediaREST.getInstance().getSummary(articleIRI).getThumbnail().map(thumbnail ->
-                    new Image(thumbnail.getSource(), thumbnail.getWidth(), thumbnail.getHeight()) //TODO: license
-            );
+            return storageLookup.getResourcesForIRIs(IRIs, buildSimpleEntityProjection(locale));
         } catch (IOException e) {
-            LOGGER.error(e.getMessage(), e);
-            return Optional.empty();
+            LOGGER.warn("Error when retrieving the resources linked from " + resource.getIRI(), e);
+            return Collections.emptyMap();
         }
     }
 
@@ -114,7 +93,8 @@ public class JsonLdBuilder {
                 searchResult.getResources().stream().map(resource -> new EntitySearchResult<>(
                         buildEntity(resource.getResource(), locale, context, false), resource.getScore()
                 )).collect(Collectors.toList()),
-                searchResult.getTotalHits(), baseURI, searchResult.getCurrentContinue(), searchResult.getNextContinue()
+                searchResult.isTotalHitsExact() ? Long.valueOf(searchResult.getTotalHits()) : null,
+                baseURI, searchResult.getCurrentContinue(), searchResult.getNextContinue()
         ));
     }
 
@@ -128,6 +108,7 @@ public class JsonLdBuilder {
 
     private Map<String, Object> buildPropertiesValues(Resource resource, Locale locale, Context context, boolean fullEntity) {
         Map<String, Object> propertyValues = new HashMap<>();
+        Map<String, Resource> linkedResources = fullEntity ? getLinkedResources(resource, locale) : Collections.emptyMap();
 
         SCHEMA.getProperties().forEach(property -> {
             String propertyIRI = property.getIRI();
@@ -155,13 +136,9 @@ public class JsonLdBuilder {
                         }
                     case RESOURCE:
                         if (value instanceof ResourceValue && fullEntity) {
-                            try {
-                                return storageLookup.getResourceForIRI(value.toString())
-                                        .map(object -> buildEntity(object, locale, context, false))
-										.map(Stream::of).orElseGet(Stream::empty);
-							} catch (IOException e) {
-                                LOGGER.warn("Error when retirving the resource: " + value.toString());
-                            }
+                            return Optional.ofNullable(linkedResources.get(value.toString()))
+                                    .map(object -> buildEntity(object, locale, context, false))
+                                    .map(Stream::of).orElseGet(Stream::empty);
                         }
                         return Stream.empty();
                     case STRING:
@@ -185,15 +162,7 @@ public class JsonLdBuilder {
         });
 
         if (fullEntity) {
-            Optional<String> wikipediaArticleIRI = findWikipediaArticleIRI(resource.getStringValuesForProperty("sameAs"), locale);
-            wikipediaArticleIRI
-                    .map(JsonLdBuilder::buildWikipediaArticle)
-                    .ifPresent(article -> propertyValues.put("detailedDescription", article));
-            wikipediaArticleIRI
-                    .flatMap(JsonLdBuilder::buildWikipediaImage)
-                    .ifPresent(image -> propertyValues.put("image", image));
-            buildGeoValueFromKartographer(resource)
-                    .ifPresent(geoValue -> propertyValues.put("geo", geoValue));
+            propertyValues.putAll(enricher.enrich(resource, locale));
         }
 
         return propertyValues;
@@ -37,7 +37,7 @@ public class PartialCollection<T> extends Collection<T> {
     @JsonCreator
     PartialCollection(
             @JsonProperty("element") List<T> elements,
-            @JsonProperty("totalItems") long totalNumber,
+            @JsonProperty("totalItems") Long totalNumber,
             @JsonProperty("hydra:first") String baseIRI,
             String currentContinue, //TODO
             String nextContinue
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.lucene;
+
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import us.askplatyp.kb.lucene.model.Schema;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Compact storage of all the stored values of a document inside of a single binary stored field.
+ * <p>
+ * Format: a format version and the number of values followed by the values as (field id, value) pairs.
+ * The field id is the position of the field name in the {@link Dictionary} of the index plus one, or 0 if the field
+ * name is written inline. The format version 1 also contains the fingerprint of the dictionary built from the
+ * {@link Schema}, used before the dictionary was saved with the index.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class CompactStoredFields {
+
+    static final String FIELD_NAME = "@resource";
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int SCHEMA_DICTIONARY_FORMAT_VERSION = 1;
+    private static final Dictionary SCHEMA_DICTIONARY = Dictionary.extend(Collections.emptyList());
+    private static final int SCHEMA_DICTIONARY_FINGERPRINT = Arrays.hashCode(SCHEMA_DICTIONARY.names);
+
+    private final Dictionary dictionary;
+    private final List<String> names = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+
+    CompactStoredFields(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    void add(String name, String value) {
+        names.add(name);
+        values.add(value);
+    }
+
+    StoredField build() {
+        ByteBuffersDataOutput output = new ByteBuffersDataOutput();
+        try {
+            output.writeVInt(FORMAT_VERSION);
+            output.writeVInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                Integer fieldId = dictionary.ids.get(names.get(i));
+                if (fieldId == null) {
+                    output.writeVInt(0);
+                    output.writeString(names.get(i));
+                } else {
+                    output.writeVInt(fieldId);
+                }
+                output.writeString(values.get(i));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Not possible with an in memory output
+        }
+        return new StoredField(FIELD_NAME, output.toArrayCopy());
+    }
+
+    /**
+     * Field names identified by their position. It is saved with the index and is only extended so that the
+     * ids of the already written documents do not change when the schema changes.
+     */
+    static final class Dictionary {
+
+        private final String[] names;
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        private Dictionary(String[] names) {
+            this.names = names;
+            for (int i = 0; i < names.length; i++) {
+                ids.put(names[i], i + 1);
+            }
+        }
+
+        /**
+         * @return the given dictionary followed by the field names of the current {@link Schema} it does not contain
+         */
+        static Dictionary extend(List<String> names) {
+            Set<String> known = new HashSet<>(names);
+            return new Dictionary(Stream.concat(
+                    names.stream(),
+                    Stream.concat(
+                            Stream.of("@id", "@type"),
+                            Schema.getSchema().getProperties().flatMap(property -> property.getFieldNames().stream())
+                    ).distinct().sorted().filter(name -> !known.contains(name))
+            ).toArray(String[]::new));
+        }
+
+        static Dictionary deserialize(String serialized) {
+            return extend(serialized.isEmpty() ? Collections.emptyList() : Arrays.asList(serialized.split("\n")));
+        }
+
+        String serialize() {
+            return String.join("\n", names);
+        }
+
+        private String getName(int fieldId) throws IOException {
+            if (fieldId > names.length) {
+                throw new IOException("Unknown compact storage field id " + fieldId);
+            }
+            return names[fieldId - 1];
+        }
+    }
+
+    /**
+     * Loads stored fields, expanding the compact storage field into its values.
+     * Only the values of the requested fields are materialized.
+     */
+    static class Visitor extends DocumentStoredFieldVisitor {
+
+        private final Dictionary dictionary;
+        private final Set<String> fieldsToLoad;
+
+        Visitor(Dictionary dictionary) {
+            this.dictionary = dictionary;
+            this.fieldsToLoad = null;
+        }
+
+        Visitor(Dictionary dictionary, Set<String> fieldsToLoad) {
+            super(fieldsToLoad);
+            this.dictionary = dictionary;
+            this.fieldsToLoad = fieldsToLoad;
+        }
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) throws IOException {
+            if (fieldInfo.name.equals(FIELD_NAME)) {
+                return (fieldsToLoad == null || !fieldsToLoad.isEmpty()) ? Status.YES : Status.NO;
+            }
+            return super.needsField(fieldInfo);
+        }
+
+        @Override
+        public void binaryField(FieldInfo fieldInfo, byte[] value) throws IOException {
+            if (fieldInfo.name.equals(FIELD_NAME)) {
+                decode(value);
+            } else {
+                super.binaryField(fieldInfo, value);
+            }
+        }
+
+        private void decode(byte[] bytes) throws IOException {
+            ByteArrayDataInput input = new ByteArrayDataInput(bytes);
+            int version = input.readVInt();
+            Dictionary documentDictionary = dictionary;
+            if (version == SCHEMA_DICTIONARY_FORMAT_VERSION) {
+                if (input.readInt() != SCHEMA_DICTIONARY_FINGERPRINT) {
+                    throw new IllegalStateException("The index has been written with an other schema. It should be rebuilt.");
+                }
+                documentDictionary = SCHEMA_DICTIONARY;
+            } else if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported compact storage format version: " + version);
+            }
+            int count = input.readVInt();
+            for (int i = 0; i < count; i++) {
+                int fieldId = input.readVInt();
+                String name = (fieldId == 0) ? input.readString() : documentDictionary.getName(fieldId);
+                if (fieldsToLoad == null || fieldsToLoad.contains(name)) {
+                    getDocument().add(new StoredField(name, input.readString()));
+                } else {
+                    input.skipBytes(input.readVInt());
+                }
+            }
+        }
+    }
+}
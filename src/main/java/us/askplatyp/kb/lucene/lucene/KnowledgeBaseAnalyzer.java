@@ -19,9 +19,11 @@ package us.askplatyp.kb.lucene.lucene;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.analysis.core.SimpleAnalyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.fr.FrenchAnalyzer;
+import org.apache.lucene.search.suggest.document.CompletionAnalyzer;
 
 import java.util.Map;
 import java.util.TreeMap;
@@ -33,6 +35,10 @@ class KnowledgeBaseAnalyzer extends DelegatingAnalyzerWrapper {
 
     private static Map<String, Analyzer> LUCENE_ANALYZERS = new TreeMap<>();
     private static Analyzer DEFAULT_ANALYZER = new SimpleAnalyzer();
+    /**
+     * The suggested labels are already lower cased and are completed as a whole
+     */
+    static final Analyzer SUGGEST_ANALYZER = new CompletionAnalyzer(new KeywordAnalyzer());
 
     static {
         LUCENE_ANALYZERS.put("en", new EnglishAnalyzer());
@@ -47,6 +53,9 @@ class KnowledgeBaseAnalyzer extends DelegatingAnalyzerWrapper {
         if (fieldName == null) {
             return DEFAULT_ANALYZER;
         }
+        if (fieldName.startsWith(LuceneIndex.SUGGEST_FIELD_PREFIX)) {
+            return SUGGEST_ANALYZER;
+        }
 
         for (Map.Entry<String, Analyzer> entry : LUCENE_ANALYZERS.entrySet()) {
             if (fieldName.endsWith("@" + entry.getKey())) {
@@ -17,43 +17,338 @@
 
 package us.askplatyp.kb.lucene.lucene;
 
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene87.Lucene87Codec;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.Term;
+import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
+import org.apache.lucene.search.suggest.document.Completion84PostingsFormat;
+import org.apache.lucene.search.suggest.document.CompletionQuery;
+import org.apache.lucene.search.suggest.document.SuggestIndexSearcher;
+import org.apache.lucene.search.suggest.document.TopSuggestDocs;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import us.askplatyp.kb.lucene.Configuration;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Optional;
-import java.util.OptionalInt;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author Thomas Pellissier Tanon
  */
 public class LuceneIndex implements Closeable {
 
-    private IndexWriter indexWriter;
-    private SearcherManager searcherManager;
+    private static final Logger LOGGER = LoggerFactory.getLogger(LuceneIndex.class);
+    /**
+     * Order of the search results: by decreasing rank then by identifier so that it does not depend on the doc ids
+     */
+    static final Sort RANK_SORT = new Sort(new SortField("score", SortField.Type.LONG, true), new SortField("@id", SortField.Type.STRING));
+    static final int TOTAL_HITS_THRESHOLD = 1000;
+    private static final long LEASE_PRUNING_INTERVAL = 10000;
+    private static final double MIN_GENERATION_SIZE_RATIO = 0.5;
+    private static final String CHECKPOINT_DUMP_KEY = "checkpoint.dump";
+    private static final String CHECKPOINT_POSITION_KEY = "checkpoint.position";
+    private static final String STORED_FIELDS_DICTIONARY_KEY = "compactStorage.dictionary";
+    private static final AtomicLong SEARCHER_VERSIONS = new AtomicLong();
+    static final String REVISION_FIELD = "@revision";
+    static final String CONTENT_HASH_FIELD = "@hash";
+    static final String SUGGEST_FIELD_PREFIX = "@suggest@";
+    private static final PostingsFormat SUGGEST_POSTINGS_FORMAT = new Completion84PostingsFormat();
+
+    private Path directoryPath;
+    private volatile IndexWriter indexWriter;
+    private volatile CompactStoredFields.Dictionary storedFieldsDictionary;
+    private volatile SearcherManager searcherManager;
+    private volatile ReaderManager changeDetectionReaderManager;
+    private volatile SearcherLifetimeManager searcherLifetimeManager = new SearcherLifetimeManager();
+    private volatile long lastLeasePruning = System.currentTimeMillis();
+    private volatile boolean bulkLoading = false;
+    private final LongAdder skippedUpdates = new LongAdder();
 
     public LuceneIndex(Path luceneDirectoryPath) throws IOException {
+        this.directoryPath = luceneDirectoryPath;
         Directory luceneDirectory = FSDirectory.open(luceneDirectoryPath);
         KnowledgeBaseAnalyzer analyzer = new KnowledgeBaseAnalyzer();
-        this.indexWriter = new IndexWriter(luceneDirectory, new IndexWriterConfig(analyzer));
-        indexWriter.commit(); //Makes sure that the index is created
-        this.searcherManager = new SearcherManager(luceneDirectory, new SearcherFactory());
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setCodec(new Lucene87Codec() {
+            @Override
+            public PostingsFormat getPostingsFormatForField(String field) {
+                //The label completions are stored in an FST
+                return field.startsWith(SUGGEST_FIELD_PREFIX) ? SUGGEST_POSTINGS_FORMAT : super.getPostingsFormatForField(field);
+            }
+        });
+        Sort indexSort = getIndexSort(luceneDirectory);
+        if (indexSort != null) {
+            config.setIndexSort(indexSort);
+        }
+        if (!RANK_SORT.equals(indexSort)) {
+            LOGGER.info("The existing index is not sorted by rank and identifier, rebuild it to get it sorted");
+        }
+        this.indexWriter = new IndexWriter(luceneDirectory, config);
+        Map<String, String> commitData = getCommitData();
+        CompactStoredFields.Dictionary dictionary = CompactStoredFields.Dictionary.deserialize(
+                commitData.getOrDefault(STORED_FIELDS_DICTIONARY_KEY, "")
+        );
+        this.storedFieldsDictionary = dictionary;
+        setCommitData(commitData);
+        indexWriter.commit(); //Makes sure that the index is created and that the dictionary is saved
+        //The reader versions restart in each generation so the leases are also identified by a random generation id
+        long generation = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        this.searcherManager = new SearcherManager(luceneDirectory, new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                return new GenerationSearcher(reader, dictionary, generation, SEARCHER_VERSIONS.incrementAndGet());
+            }
+        });
+        this.changeDetectionReaderManager = new ReaderManager(indexWriter, true, false);
+    }
+
+    /**
+     * The index sort could not be changed on an existing index
+     */
+    private static Sort getIndexSort(Directory directory) throws IOException {
+        if (!DirectoryReader.indexExists(directory)) {
+            return RANK_SORT;
+        }
+        for (SegmentCommitInfo segment : SegmentInfos.readLatestCommit(directory)) {
+            if (!RANK_SORT.equals(segment.info.getIndexSort())) {
+                return segment.info.getIndexSort();
+            }
+        }
+        return RANK_SORT;
+    }
+
+    /**
+     * Deletes the Lucene files of an index and its directory if nothing else remains in it
+     */
+    public static void deleteIndex(Path luceneDirectoryPath) throws IOException {
+        if (!Files.isDirectory(luceneDirectoryPath)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(luceneDirectoryPath)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(IndexFileNames.SEGMENTS) || fileName.equals(IndexWriter.WRITE_LOCK_NAME) ||
+                        IndexFileNames.CODEC_FILE_PATTERN.matcher(fileName).matches()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        try (Stream<Path> files = Files.list(luceneDirectoryPath)) {
+            if (!files.findAny().isPresent()) {
+                Files.delete(luceneDirectoryPath);
+            }
+        }
+    }
+
+    public Path getDirectoryPath() {
+        return directoryPath;
     }
 
     public Reader getReader() throws IOException {
-        return new Reader();
+        pruneSearcherLeases();
+        while (true) {
+            SearcherManager currentSearcherManager = searcherManager;
+            SearcherLifetimeManager currentLifetimeManager = searcherLifetimeManager;
+            IndexSearcher indexSearcher;
+            try {
+                indexSearcher = currentSearcherManager.acquire();
+            } catch (AlreadyClosedException e) {
+                if (currentSearcherManager == searcherManager) {
+                    throw e; //The index itself has been closed
+                }
+                continue; //The index has just switched of generation
+            }
+            try {
+                return new Reader(indexSearcher, currentLifetimeManager, currentLifetimeManager.record(indexSearcher));
+            } catch (AlreadyClosedException e) {
+                currentSearcherManager.release(indexSearcher);
+                if (currentLifetimeManager == searcherLifetimeManager) {
+                    throw e;
+                }
+            }
+        }
     }
 
-    void putDocument(Document document, Term identifier) throws IOException {
-        indexWriter.updateDocument(identifier, document); //TODO use revision
+    /**
+     * The searchers stay leased during the configured time after having been replaced by a more recent one
+     */
+    private void pruneSearcherLeases() throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - lastLeasePruning > LEASE_PRUNING_INTERVAL) {
+            lastLeasePruning = now;
+            searcherLifetimeManager.prune(new SearcherLifetimeManager.PruneByAge(Configuration.getInstance().getContinueTimeToLive()));
+        }
+    }
+
+    /**
+     * Outside of the bulk loading the document is not written if the indexed version has the same content hash or
+     * comes from a more recent revision. The indexed version is the one visible at the last commit.
+     *
+     * @param revisionId  the revision of the source entity or 0 if unknown
+     * @param contentHash the hash of the document content
+     */
+    void putDocument(Document document, Term identifier, long revisionId, long contentHash) throws IOException {
+        if (bulkLoading) {
+            indexWriter.addDocument(document);
+        } else if (isUpToDate(identifier, revisionId, contentHash)) {
+            skippedUpdates.increment();
+        } else {
+            indexWriter.updateDocument(identifier, document);
+        }
+    }
+
+    private boolean isUpToDate(Term identifier, long revisionId, long contentHash) throws IOException {
+        ReaderManager readerManager = changeDetectionReaderManager;
+        DirectoryReader reader = readerManager.acquire();
+        try {
+            OptionalInt docID = new PrimaryKeyLookup(reader, identifier.field()).lookup(identifier.text());
+            if (!docID.isPresent()) {
+                return false;
+            }
+            List<LeafReaderContext> leaves = reader.leaves();
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docID.getAsInt(), leaves));
+            int leafDocID = docID.getAsInt() - leaf.docBase;
+            NumericDocValues revisions = DocValues.getNumeric(leaf.reader(), REVISION_FIELD);
+            if (revisionId > 0 && revisions.advanceExact(leafDocID) && revisions.longValue() > revisionId) {
+                return true; //Out of order update
+            }
+            NumericDocValues contentHashes = DocValues.getNumeric(leaf.reader(), CONTENT_HASH_FIELD);
+            return contentHashes.advanceExact(leafDocID) && contentHashes.longValue() == contentHash;
+        } finally {
+            readerManager.release(reader);
+        }
+    }
+
+    void replaceDocument(Document document, Term identifier) throws IOException {
+        indexWriter.updateDocument(identifier, document);
+    }
+
+    void deleteDocument(Term identifier) throws IOException {
+        indexWriter.deleteDocuments(identifier);
+    }
+
+    /**
+     * Calls the visitor with the stored fields, the score and the revision of each document currently in the index.
+     * The visitor could modify the index: the modifications are not visible during the visit.
+     */
+    void forEachDocument(DocumentVisitor visitor) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(indexWriter)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                NumericDocValues scores = DocValues.getNumeric(leaf.reader(), "score");
+                NumericDocValues revisions = DocValues.getNumeric(leaf.reader(), REVISION_FIELD);
+                for (int docID = 0; docID < leaf.reader().maxDoc(); docID++) {
+                    if (liveDocs != null && !liveDocs.get(docID)) {
+                        continue;
+                    }
+                    CompactStoredFields.Visitor fieldsVisitor = new CompactStoredFields.Visitor(storedFieldsDictionary);
+                    leaf.reader().document(docID, fieldsVisitor);
+                    visitor.visit(
+                            fieldsVisitor.getDocument(),
+                            scores.advanceExact(docID) ? scores.longValue() : 0,
+                            revisions.advanceExact(docID) ? revisions.longValue() : 0
+                    );
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return indexWriter.getDocStats().maxDoc == 0;
+    }
+
+    /**
+     * Switches to a loading mode for new indexes: documents are added without looking for a previous version and
+     * are buffered in a larger amount of memory.
+     * <p>
+     * WARNING: each resource should be loaded only once and should not be already in the index until
+     * {@link #finishBulkLoad()} is called.
+     */
+    public void startBulkLoad() {
+        indexWriter.getConfig().setRAMBufferSizeMB(Configuration.getInstance().getBulkLoadRAMBufferSize());
+        bulkLoading = true;
+    }
+
+    public boolean isBulkLoading() {
+        return bulkLoading;
+    }
+
+    /**
+     * Merges the bulk loaded segments, commits and switches back to the update mode.
+     * WARNING: Expansive operation
+     */
+    public void finishBulkLoad() throws IOException {
+        bulkLoading = false;
+        indexWriter.getConfig().setRAMBufferSizeMB(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB);
+        indexWriter.forceMerge(1);
+        indexWriter.commit();
+        changeDetectionReaderManager.maybeRefresh();
+    }
+
+    /**
+     * @return the position saved with the last commit if it has been done during the processing of the given dump
+     */
+    public OptionalLong getCheckpoint(String dumpId) {
+        Map<String, String> commitData = getCommitData();
+        if (!dumpId.equals(commitData.get(CHECKPOINT_DUMP_KEY)) || !commitData.containsKey(CHECKPOINT_POSITION_KEY)) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(Long.parseLong(commitData.get(CHECKPOINT_POSITION_KEY)));
+    }
+
+    /**
+     * Commits the indexed documents with the position reached in the dump being processed.
+     * WARNING: Expansive operation
+     */
+    public void saveCheckpoint(String dumpId, long position) throws IOException {
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(CHECKPOINT_DUMP_KEY, dumpId);
+        commitData.put(CHECKPOINT_POSITION_KEY, Long.toString(position));
+        setCommitData(commitData);
+        indexWriter.commit();
+        changeDetectionReaderManager.maybeRefresh();
+    }
+
+    /**
+     * Removes the checkpoint at the next commit
+     */
+    public void clearCheckpoint() {
+        setCommitData(new HashMap<>());
+    }
+
+    private Map<String, String> getCommitData() {
+        Map<String, String> commitData = new HashMap<>();
+        Iterable<Map.Entry<String, String>> liveCommitData = indexWriter.getLiveCommitData();
+        if (liveCommitData != null) {
+            liveCommitData.forEach(entry -> commitData.put(entry.getKey(), entry.getValue()));
+        }
+        return commitData;
+    }
+
+    /**
+     * The stored fields dictionary is always kept in the commit data
+     */
+    private void setCommitData(Map<String, String> commitData) {
+        commitData.put(STORED_FIELDS_DICTIONARY_KEY, storedFieldsDictionary.serialize());
+        indexWriter.setLiveCommitData(commitData.entrySet(), true);
+    }
+
+    CompactStoredFields.Dictionary getStoredFieldsDictionary() {
+        return storedFieldsDictionary;
     }
 
     /**
@@ -62,63 +357,339 @@ public class LuceneIndex implements Closeable {
     public void refreshReaders() throws IOException {
         indexWriter.commit();
         searcherManager.maybeRefresh();
+        changeDetectionReaderManager.maybeRefresh();
+        long skipped = skippedUpdates.sumThenReset();
+        if (skipped > 0) {
+            LOGGER.info(skipped + " unchanged documents have not been rewritten");
+        }
+    }
+
+    /**
+     * Switches this index to the content of the next generation.
+     * The current readers keep reading the previous generation until they are closed.
+     * The given index should not be used anymore after this call.
+     *
+     * @throws IOException if the next generation is empty or much smaller than the current one
+     */
+    public synchronized void replaceWith(LuceneIndex nextGeneration) throws IOException {
+        nextGeneration.refreshReaders();
+        int currentSize = indexWriter.getDocStats().numDocs;
+        int nextSize = nextGeneration.indexWriter.getDocStats().numDocs;
+        if (nextSize == 0 || nextSize < currentSize * MIN_GENERATION_SIZE_RATIO) {
+            throw new IOException("The new index generation " + nextGeneration.directoryPath + " has only " + nextSize +
+                    " documents, the current one has " + currentSize);
+        }
+
+        IndexWriter oldIndexWriter = indexWriter;
+        SearcherManager oldSearcherManager = searcherManager;
+        ReaderManager oldChangeDetectionReaderManager = changeDetectionReaderManager;
+        SearcherLifetimeManager oldSearcherLifetimeManager = searcherLifetimeManager;
+        //The next generation searcher may have been opened before the last refresh of the current one
+        IndexSearcher nextSearcher = nextGeneration.searcherManager.acquire();
+        try {
+            ((GenerationSearcher) nextSearcher).version = SEARCHER_VERSIONS.incrementAndGet();
+        } finally {
+            nextGeneration.searcherManager.release(nextSearcher);
+        }
+        directoryPath = nextGeneration.directoryPath;
+        indexWriter = nextGeneration.indexWriter;
+        storedFieldsDictionary = nextGeneration.storedFieldsDictionary;
+        searcherManager = nextGeneration.searcherManager;
+        changeDetectionReaderManager = nextGeneration.changeDetectionReaderManager;
+        searcherLifetimeManager = nextGeneration.searcherLifetimeManager;
+        oldSearcherLifetimeManager.close();
+        oldChangeDetectionReaderManager.close();
+        oldIndexWriter.close();
+        oldSearcherManager.close();
+        LOGGER.info("Switched to the index generation " + directoryPath + " with " + nextSize + " documents");
     }
 
     @Override
     public void close() throws IOException {
+        searcherLifetimeManager.close();
+        changeDetectionReaderManager.close();
         indexWriter.close();
         searcherManager.close();
     }
 
+    @FunctionalInterface
+    interface DocumentVisitor {
+        void visit(Document storedFields, long score, long revisionId) throws IOException;
+    }
+
     public class Reader implements Closeable {
 
         private IndexSearcher indexSearcher;
+        //The lifetime manager is kept in order to find the leased searchers even if the index has switched of generation
+        private final SearcherLifetimeManager lifetimeManager;
+        private final long leaseVersion;
+        private Map<String, PrimaryKeyLookup> primaryKeyLookups = new HashMap<>();
+
+        private Reader(IndexSearcher indexSearcher, SearcherLifetimeManager lifetimeManager, long leaseVersion) {
+            this.indexSearcher = indexSearcher;
+            this.lifetimeManager = lifetimeManager;
+            this.leaseVersion = leaseVersion;
+        }
+
+        /**
+         * @return the generation to give to {@link #acquireLeasedReader(long, long)}
+         */
+        long getLeaseGeneration() {
+            return getGenerationSearcher().generation;
+        }
+
+        /**
+         * @return the version to give to {@link #acquireLeasedReader(long, long)} in order to read again the same index state
+         */
+        long getLeaseVersion() {
+            return leaseVersion;
+        }
 
-        private Reader() throws IOException {
-            indexSearcher = searcherManager.acquire();
+        /**
+         * @return a reader on the index state read by a previous reader if its lease has not expired and if it has been
+         * taken in the index generation read by this reader
+         */
+        Optional<Reader> acquireLeasedReader(long generation, long version) throws IOException {
+            if (generation != getLeaseGeneration()) {
+                return Optional.empty();
+            }
+            IndexSearcher leasedSearcher;
+            try {
+                leasedSearcher = lifetimeManager.acquire(version);
+            } catch (AlreadyClosedException e) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(leasedSearcher).map(searcher -> new Reader(searcher, lifetimeManager, version));
         }
 
         public Optional<Document> getDocumentForTerm(Term term) throws IOException {
             OptionalInt docID = getDocIdForTerm(term);
             if (docID.isPresent()) {
-                return Optional.of(indexSearcher.doc(docID.getAsInt()));
+                return Optional.of(getDocumentForDocId(docID.getAsInt()));
             } else {
                 return Optional.empty();
             }
         }
 
         OptionalInt getDocIdForTerm(Term term) throws IOException {
-            ScoreDoc[] scoreDocs = indexSearcher.search(new TermQuery(term), 1).scoreDocs;
-            switch (scoreDocs.length) {
-                case 0:
-                    return OptionalInt.empty();
-                case 1:
-                    return OptionalInt.of(scoreDocs[0].doc);
-                default:
-                    throw new RuntimeException("More than one document found for term " + term.toString());
+            return getPrimaryKeyLookup(term.field()).lookup(term.text());
+        }
+
+        /**
+         * Loads the documents with the given unique keys, reading them in index order
+         *
+         * @return the found documents indexed by key
+         */
+        Map<String, Document> getDocumentsForTerms(String field, Collection<String> keys, Set<String> fieldsToLoad) throws IOException {
+            List<Map.Entry<String, Integer>> docIDs = new ArrayList<>(getPrimaryKeyLookup(field).lookupAll(keys).entrySet());
+            docIDs.sort(Map.Entry.comparingByValue());
+            Map<String, Document> documents = new HashMap<>();
+            for (Map.Entry<String, Integer> docID : docIDs) {
+                documents.put(docID.getKey(), getDocumentForDocId(docID.getValue(), fieldsToLoad));
             }
+            return documents;
+        }
+
+        private PrimaryKeyLookup getPrimaryKeyLookup(String field) {
+            return primaryKeyLookups.computeIfAbsent(field, key -> new PrimaryKeyLookup(indexSearcher.getIndexReader(), key));
         }
 
         Document getDocumentForDocId(int docID) throws IOException {
-            return indexSearcher.doc(docID);
+            return loadDocument(docID, new CompactStoredFields.Visitor(getGenerationSearcher().storedFieldsDictionary));
         }
 
         public Document getDocumentForDocId(int docID, Set<String> fieldsToLoad) throws IOException {
-            return indexSearcher.doc(docID, fieldsToLoad);
+            return loadDocument(docID, new CompactStoredFields.Visitor(getGenerationSearcher().storedFieldsDictionary, fieldsToLoad));
         }
 
-        TopDocs search(Query query, int limit) throws IOException {
-            return indexSearcher.search(query, limit);
+        private GenerationSearcher getGenerationSearcher() {
+            return (GenerationSearcher) indexSearcher;
+        }
+
+        private Document loadDocument(int docID, CompactStoredFields.Visitor visitor) throws IOException {
+            indexSearcher.doc(docID, visitor);
+            return visitor.getDocument();
+        }
+
+        /**
+         * Cheap check done on the terms dictionaries only: the term could only be in deleted documents
+         *
+         * @return if the index contains a term at most maxEdits edits away from the given one
+         */
+        boolean hasSimilarTerm(Term term, int maxEdits) throws IOException {
+            for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+                Terms terms = leaf.reader().terms(term.field());
+                if (terms == null) {
+                    continue;
+                }
+                if (maxEdits == 0) {
+                    if (terms.iterator().seekExact(term.bytes())) {
+                        return true;
+                    }
+                } else if (new FuzzyTermsEnum(terms, term, maxEdits, FuzzyQuery.defaultPrefixLength, FuzzyQuery.defaultTranspositions).next() != null) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         public TopDocs searchAfter(ScoreDoc after, Query query, int limit) throws IOException {
             return indexSearcher.searchAfter(after, query, limit);
         }
 
+        /**
+         * Returns the matching documents by decreasing rank then by identifier.
+         * The index being sorted the same way, the collection of each segment stops once the first matching documents
+         * and TOTAL_HITS_THRESHOLD hits have been seen. Above this threshold the total number of hits is a lower bound.
+         * <p>
+         * When paging, the collection of each segment starts at the first document after the given one, found by a
+         * binary search on the sort doc values. The previous documents are only read to count the hits up to the
+         * threshold so a page costs the same whatever its position.
+         *
+         * @return {@link FieldDoc}s with the rank as score
+         */
+        TopDocs searchByRank(FieldDoc after, Query query, int limit) throws IOException {
+            int totalHitsThreshold = Math.max(limit, TOTAL_HITS_THRESHOLD);
+            TopFieldCollector collector = TopFieldCollector.create(RANK_SORT, limit, after, totalHitsThreshold);
+            boolean isTotalHitsLowerBound = false;
+            if (after == null) {
+                indexSearcher.search(query, collector);
+            } else {
+                Weight weight = indexSearcher.createWeight(indexSearcher.rewrite(query), collector.scoreMode(), 1);
+                for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+                    LeafCollector leafCollector;
+                    try {
+                        leafCollector = collector.getLeafCollector(leaf);
+                    } catch (CollectionTerminatedException e) {
+                        continue;
+                    }
+                    BulkScorer scorer = weight.bulkScorer(leaf);
+                    if (scorer == null) {
+                        continue;
+                    }
+                    Bits liveDocs = leaf.reader().getLiveDocs();
+                    int firstDoc = getFirstDocNotBefore(leaf.reader(), after);
+                    if (firstDoc > 0) {
+                        if (collector.getTotalHits() >= totalHitsThreshold) {
+                            isTotalHitsLowerBound = true;
+                        } else {
+                            try {
+                                scorer.score(new FilterLeafCollector(leafCollector) {
+                                    @Override
+                                    public void collect(int doc) throws IOException {
+                                        super.collect(doc);
+                                        if (collector.getTotalHits() >= totalHitsThreshold) {
+                                            throw new CollectionTerminatedException();
+                                        }
+                                    }
+                                }, liveDocs, 0, firstDoc);
+                            } catch (CollectionTerminatedException e) {
+                                isTotalHitsLowerBound = true;
+                            }
+                        }
+                    }
+                    try {
+                        scorer.score(leafCollector, liveDocs, firstDoc, DocIdSetIterator.NO_MORE_DOCS);
+                    } catch (CollectionTerminatedException e) {
+                        //The next documents are not competitive
+                    }
+                }
+            }
+            TopDocs topDocs = collector.topDocs();
+            if (isTotalHitsLowerBound) {
+                topDocs = new TopFieldDocs(
+                        new TotalHits(topDocs.totalHits.value, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO),
+                        topDocs.scoreDocs, ((TopFieldDocs) topDocs).fields
+                );
+            }
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                scoreDoc.score = ((Number) ((FieldDoc) scoreDoc).fields[0]).floatValue();
+            }
+            return topDocs;
+        }
+
+        /**
+         * @return the first document of the segment that is not sorted before the given one or 0 if the segment is not
+         * sorted by rank
+         */
+        private int getFirstDocNotBefore(LeafReader reader, FieldDoc after) throws IOException {
+            if (!RANK_SORT.equals(reader.getMetaData().getSort())) {
+                return 0;
+            }
+            long rank = (Long) after.fields[0];
+            BytesRef id = (BytesRef) after.fields[1];
+            int low = 0;
+            int high = reader.maxDoc();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (isSortedBefore(reader, middle, rank, id)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * The doc values iterators only go forward so new ones are used for each document
+         */
+        private boolean isSortedBefore(LeafReader reader, int doc, long rank, BytesRef id) throws IOException {
+            NumericDocValues ranks = DocValues.getNumeric(reader, "score");
+            long docRank = ranks.advanceExact(doc) ? ranks.longValue() : 0;
+            if (docRank != rank) {
+                return docRank > rank;
+            }
+            if (id == null) {
+                return false;
+            }
+            SortedDocValues ids = DocValues.getSorted(reader, "@id");
+            return !ids.advanceExact(doc) || ids.lookupOrd(ids.ordValue()).compareTo(id) < 0;
+        }
+
+        /**
+         * Indexes built before the identifiers were added to the doc values could only be paged by doc id
+         */
+        boolean hasIdentifierDocValues() {
+            FieldInfo fieldInfo = FieldInfos.getMergedFieldInfos(indexSearcher.getIndexReader()).fieldInfo("@id");
+            return fieldInfo != null && fieldInfo.getDocValuesType() == DocValuesType.SORTED;
+        }
+
+        /**
+         * @return the version of the index read. It increases at each refresh or switch of generation
+         */
+        public long getVersion() {
+            return getGenerationSearcher().version;
+        }
+
+        TopSuggestDocs suggest(CompletionQuery query, int limit) throws IOException {
+            return new SuggestIndexSearcher(indexSearcher.getIndexReader()).suggest(query, limit, false);
+        }
+
         @Override
         public void close() throws IOException {
-            searcherManager.release(indexSearcher);
+            //Same as the release by the managers
+            indexSearcher.getIndexReader().decRef();
             indexSearcher = null;
         }
     }
+
+    /**
+     * Searcher keeping the data specific to the index generation it reads
+     */
+    private static class GenerationSearcher extends IndexSearcher {
+
+        private final CompactStoredFields.Dictionary storedFieldsDictionary;
+        private final long generation;
+        private volatile long version;
+
+        private GenerationSearcher(
+                IndexReader reader, CompactStoredFields.Dictionary storedFieldsDictionary, long generation, long version
+        ) {
+            super(reader);
+            this.storedFieldsDictionary = storedFieldsDictionary;
+            this.generation = generation;
+            this.version = version;
+        }
+    }
 }
@@ -17,66 +17,194 @@
 
 package us.askplatyp.kb.lucene.lucene;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.suggest.document.ContextSuggestField;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import us.askplatyp.kb.lucene.Configuration;
 import us.askplatyp.kb.lucene.model.IndexableResource;
 import us.askplatyp.kb.lucene.model.StorageLoader;
 import us.askplatyp.kb.lucene.model.value.LocaleStringValue;
+import us.askplatyp.kb.lucene.model.value.StringValue;
 import us.askplatyp.kb.lucene.model.value.Value;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
 
 public class LuceneLoader implements StorageLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger(LuceneLoader.class);
+    private static final String RAW_TYPE_FIELD = "@rawType";
+    private static final HashFunction CONTENT_HASH_FUNCTION = Hashing.murmur3_128();
 
     private LuceneIndex index;
+    private boolean compactStorage;
 
     public LuceneLoader(LuceneIndex index) {
+        this(index, Configuration.getInstance().isCompactStorageEnabled());
+    }
+
+    public LuceneLoader(LuceneIndex index, boolean compactStorage) {
         this.index = index;
+        this.compactStorage = compactStorage;
     }
 
     @Override
     public void addResource(IndexableResource resource) {
+        Document document = buildDocument(resource);
+        try {
+            long contentHash = document.getField(LuceneIndex.CONTENT_HASH_FIELD).numericValue().longValue();
+            index.putDocument(document, new Term("@id", resource.getIRI()), resource.getRevisionId(), contentHash);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    private Document buildDocument(IndexableResource resource) {
         Document document = new Document();
+        CompactStoredFields storedFields = compactStorage ? new CompactStoredFields(index.getStoredFieldsDictionary()) : null;
 
-        document.add(new StringField("@id", resource.getIRI(), Field.Store.YES));
+        addStringField(document, storedFields, "@id", resource.getIRI());
+        document.add(new SortedDocValuesField("@id", new BytesRef(resource.getIRI())));
 
-        resource.getTypes().forEach(typeIRI -> document.add(new StringField("@type", typeIRI, Field.Store.YES)));
+        resource.getTypes().forEach(typeIRI -> addStringField(document, storedFields, "@type", typeIRI));
+        resource.getRawTypes().forEach(classId -> addStringField(document, storedFields, RAW_TYPE_FIELD, classId));
 
         resource.getLabels().forEach(label -> document.add(new StringField(
                 "label@" + label.getLocale().getLanguage(), //TODO: variants
                 label.toString().toLowerCase(label.getLocale()),
                 Field.Store.NO
         )));
+        String[] types = resource.getTypes().toArray(String[]::new);
+        resource.getLabels().filter(LuceneLoader::isSuggestable).forEach(label -> document.add(new ContextSuggestField(
+                LuceneIndex.SUGGEST_FIELD_PREFIX + label.getLocale().getLanguage(),
+                label.toString().toLowerCase(label.getLocale()),
+                Math.max(resource.getRank(), 0),
+                types
+        )));
 
         resource.getClaims().forEach(claim -> {
             Value value = claim.getValue();
             if (value instanceof LocaleStringValue) {
-                document.add(new StringField(
+                addStringField(
+                        document,
+                        storedFields,
                         claim.getProperty() + "@" + ((LocaleStringValue) value).getLocale().getLanguage(),
-                        value.toString(),
-                        Field.Store.YES
-                ));
+                        value.toString()
+                );
             } else {
-                document.add(new StringField(claim.getProperty(), value.toString(), Field.Store.YES));
+                addStringField(document, storedFields, claim.getProperty(), value.toString());
             }
         });
 
+        if (storedFields != null) {
+            document.add(storedFields.build());
+        }
+
+        document.add(new NumericDocValuesField(LuceneIndex.CONTENT_HASH_FIELD, getContentHash(document, resource.getRank())));
         document.add(new NumericDocValuesField("score", resource.getRank()));
+        document.add(new NumericDocValuesField(LuceneIndex.REVISION_FIELD, resource.getRevisionId()));
+        return document;
+    }
 
-        writeDocument(document);
+    /**
+     * The completion fields reject empty values and the control characters they use as separators
+     */
+    private static boolean isSuggestable(LocaleStringValue label) {
+        String value = label.toString();
+        return !value.isEmpty() && value.chars().allMatch(character -> character >= ' ');
     }
 
-    private void writeDocument(Document document) {
-        try {
-            this.index.putDocument(document, new Term("@id", document.get("@id")));
-        } catch (IOException e) {
-            LOGGER.error(e.getMessage(), e);
+    /**
+     * Hash of the indexed strings and of the score that does not depend on the fields order
+     */
+    private static long getContentHash(Document document, int score) {
+        long hash = hash("score", Integer.toString(score));
+        for (IndexableField field : document) {
+            if (field.stringValue() != null) {
+                hash += hash(field.name(), field.stringValue());
+            }
+        }
+        return hash;
+    }
+
+    private static long hash(String name, String value) {
+        return CONTENT_HASH_FUNCTION.newHasher()
+                .putString(name, StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(value, StandardCharsets.UTF_8)
+                .hash().asLong();
+    }
+
+    /**
+     * Replaces the raw types of the loaded resources by the types returned by the resolver.
+     * The resources for which the resolver returns an empty value are removed.
+     * <p>
+     * All the documents are rewritten from their stored fields so the source data are not needed
+     * and the documents keep their relative order.
+     */
+    public void resolveRawTypes(Function<Set<String>, Optional<Set<String>>> resolver) throws IOException {
+        index.forEachDocument((storedFields, score, revisionId) -> {
+            String[] rawTypes = storedFields.getValues(RAW_TYPE_FIELD);
+            Term identifier = new Term("@id", storedFields.get("@id"));
+            Optional<Set<String>> types = resolver.apply(new HashSet<>(Arrays.asList(rawTypes)));
+            if (types.isPresent()) {
+                IndexableResource resource = rebuildResource(storedFields, score);
+                resource.setRevisionId(revisionId);
+                types.get().forEach(resource::addType);
+                index.replaceDocument(buildDocument(resource), identifier);
+            } else {
+                index.deleteDocument(identifier);
+            }
+        });
+    }
+
+    /**
+     * The raw types are not kept
+     */
+    private static IndexableResource rebuildResource(Document storedFields, long score) {
+        IndexableResource resource = new IndexableResource(storedFields.get("@id"));
+        for (IndexableField field : storedFields) {
+            String name = field.name();
+            if (name.equals("@id") || name.equals(RAW_TYPE_FIELD)) {
+                continue;
+            }
+            if (name.equals("@type")) {
+                resource.addType(field.stringValue());
+                continue;
+            }
+            int languageSeparator = name.lastIndexOf('@');
+            if (languageSeparator > 0) {
+                String property = name.substring(0, languageSeparator);
+                LocaleStringValue value = new LocaleStringValue(field.stringValue(), name.substring(languageSeparator + 1));
+                resource.addClaim(property, value);
+                if (property.equals("name") || property.equals("alternateName")) {
+                    resource.addLabel(value);
+                }
+            } else {
+                resource.addClaim(name, new StringValue(field.stringValue()));
+            }
+        }
+        resource.addToRank((int) score);
+        return resource;
+    }
+
+    private void addStringField(Document document, CompactStoredFields storedFields, String name, String value) {
+        if (storedFields == null) {
+            document.add(new StringField(name, value, Field.Store.YES));
+        } else {
+            document.add(new StringField(name, value, Field.Store.NO));
+            storedFields.add(name, value);
         }
     }
 }
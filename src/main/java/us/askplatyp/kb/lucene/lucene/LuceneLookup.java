@@ -18,15 +18,17 @@
 package us.askplatyp.kb.lucene.lucene;
 
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queries.function.FunctionScoreQuery;
 import org.apache.lucene.search.*;
+import org.apache.lucene.search.suggest.document.CompletionQuery;
+import org.apache.lucene.search.suggest.document.ContextQuery;
+import org.apache.lucene.search.suggest.document.PrefixCompletionQuery;
+import org.apache.lucene.search.suggest.document.TopSuggestDocs;
+import org.apache.lucene.util.BytesRef;
 import us.askplatyp.kb.lucene.model.*;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Thomas Pellissier Tanon
@@ -34,6 +36,9 @@ import java.util.Optional;
 public class LuceneLookup implements StorageLookup {
 
     private final static LuceneResourceBuilder RESOURCE_BUILDER = new LuceneResourceBuilder();
+    private final static Schema SCHEMA = Schema.getSchema();
+    private final static Map<ResourceProjection, Set<String>> PROJECTION_FIELDS = new ConcurrentHashMap<>();
+    private final static int SUGGESTIONS_PER_RESOURCE = 4;
     private final static TopDocs EMPTY_TOP_DOCS = new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[]{});
 
     private LuceneIndex.Reader entitiesReader;
@@ -48,53 +53,166 @@ public class LuceneLookup implements StorageLookup {
                 .map(RESOURCE_BUILDER::buildResource);
     }
 
+    public Map<String, Resource> getResourcesForIRIs(Collection<String> IRIs, ResourceProjection projection) throws IOException {
+        Map<String, List<String>> inputIRIsForKeys = new HashMap<>();
+        for (String IRI : IRIs) {
+            inputIRIsForKeys.computeIfAbsent(Namespaces.reduce(IRI), key -> new ArrayList<>()).add(IRI);
+        }
+
+        Map<String, Resource> resources = new HashMap<>();
+        entitiesReader.getDocumentsForTerms("@id", inputIRIsForKeys.keySet(), getFieldsToLoad(projection))
+                .forEach((key, document) -> {
+                    Resource resource = RESOURCE_BUILDER.buildResource(document);
+                    inputIRIsForKeys.get(key).forEach(IRI -> resources.put(IRI, resource));
+                });
+        return resources;
+    }
+
+    private static Set<String> getFieldsToLoad(ResourceProjection projection) {
+        return PROJECTION_FIELDS.computeIfAbsent(projection, key -> {
+            Set<String> fields = new HashSet<>();
+            fields.add("@id");
+            fields.add("@type");
+            for (String propertyIRI : key.getProperties()) {
+                Optional<Schema.Property> property = SCHEMA.getProperty(propertyIRI);
+                if (property.isEmpty()) {
+                    fields.add(propertyIRI);
+                } else if (property.get().getSimpleRange() == Schema.Range.LOCAL_STRING && key.getLocale().isPresent()) {
+                    fields.add(propertyIRI + "@" + key.getLocale().get().getLanguage());
+                } else {
+                    fields.addAll(property.get().getFieldNames());
+                }
+            }
+            return Collections.unmodifiableSet(fields);
+        });
+    }
+
+    /**
+     * The results are ordered by decreasing rank then by identifier.
+     * <p>
+     * The continue tokens contain the position of the last returned result in this order and the generation and version
+     * of the index that has been read. The next pages are read from this version as long as it is leased so that they
+     * are consistent with the previous ones. When the lease has expired or the index has switched of generation they
+     * are read from the current index version.
+     */
     public ResourceSearchResult getResourcesForLabel(
-            String label, String type, Locale inputLocale, String currentContinue, int limit
+            String label, String type, Locale inputLocale, String currentContinue, int limit, ResourceProjection projection
     ) throws IOException {
         Continue startAfter = parseContinue(currentContinue);
+        if (startAfter != null && (startAfter.generation != entitiesReader.getLeaseGeneration() ||
+                startAfter.version != entitiesReader.getLeaseVersion())) {
+            Optional<LuceneIndex.Reader> leasedReader = entitiesReader.acquireLeasedReader(startAfter.generation, startAfter.version);
+            if (leasedReader.isPresent()) {
+                try (LuceneIndex.Reader reader = leasedReader.get()) {
+                    return new LuceneLookup(reader).search(label, type, inputLocale, startAfter, limit, projection);
+                }
+            }
+        }
+        return search(label, type, inputLocale, startAfter, limit, projection);
+    }
+
+    private ResourceSearchResult search(
+            String label, String type, Locale inputLocale, Continue startAfter, int limit, ResourceProjection projection
+    ) throws IOException {
         TopDocs searchResults = EMPTY_TOP_DOCS;
         int fuziness;
-        if (startAfter == null) {
+        if (label == null) {
+            fuziness = 0;
+            searchResults = entitiesReader.searchByRank(buildAfter(startAfter), buildTypeQuery(type), limit);
+        } else if (startAfter == null) {
             for (fuziness = 0; fuziness <= 2; fuziness++) {
-                searchResults = entitiesReader.search(buildQueryForPhraseAndOrType(inputLocale, label, type, fuziness), limit);
+                //The levels without matching label are skipped without running the query
+                if (!entitiesReader.hasSimilarTerm(buildLabelTerm(inputLocale, label), fuziness)) {
+                    continue;
+                }
+                searchResults = entitiesReader.searchByRank(null, buildQueryForPhraseAndOrType(inputLocale, label, type, fuziness), limit);
                 if (searchResults.totalHits.value > 0) {
                     break;
                 }
             }
         } else {
             fuziness = startAfter.fuziness;
-            searchResults = entitiesReader.searchAfter(startAfter, buildQueryForPhraseAndOrType(inputLocale, label, type, fuziness), limit);
+            searchResults = entitiesReader.searchByRank(buildAfter(startAfter), buildQueryForPhraseAndOrType(inputLocale, label, type, fuziness), limit);
         }
-        ScoreDoc nextStartAfter = (searchResults.scoreDocs.length == limit) ? searchResults.scoreDocs[limit - 1] : null;
-        return buildSearchResult(searchResults, startAfter, nextStartAfter, fuziness);
+        FieldDoc nextStartAfter = (searchResults.scoreDocs.length == limit) ? (FieldDoc) searchResults.scoreDocs[limit - 1] : null;
+        return buildSearchResult(searchResults, startAfter, nextStartAfter, fuziness, getFieldsToLoad(projection));
     }
 
-    private Query buildQueryForPhraseAndOrType(Locale locale, String label, String type, int fuziness) {
-        if (Namespaces.TOP_INDIVIDUAL_CLASSES.contains(type)) {
-            type = null; //We ignore top types
-        }
-        if (type == null) {
-            if (label == null) {
-                return addScoreBoostToQuery(new MatchAllDocsQuery());
-            } else {
-                return addScoreBoostToQuery(buildFuzzyQueryForTerm(locale, label, fuziness));
+    /**
+     * Completes the given label prefix. The suggestions are ordered by resource rank.
+     */
+    public ResourceSearchResult getResourcesForLabelPrefix(
+            String prefix, String type, Locale inputLocale, int limit, ResourceProjection projection
+    ) throws IOException {
+        ContextQuery query = new ContextQuery(new PrefixCompletionQuery(
+                KnowledgeBaseAnalyzer.SUGGEST_ANALYZER,
+                new Term(LuceneIndex.SUGGEST_FIELD_PREFIX + inputLocale.getLanguage(), prefix.toLowerCase(inputLocale))
+        ));
+        if (type != null && !Namespaces.TOP_INDIVIDUAL_CLASSES.contains(type)) {
+            query.addContext(Namespaces.reduce(type));
+        }
+        //A resource is suggested once per matching label so more suggestions are read until there are enough resources
+        int suggestionsCount = SUGGESTIONS_PER_RESOURCE * limit;
+        List<TopSuggestDocs.SuggestScoreDoc> suggestedResources = getSuggestedResources(query, suggestionsCount, limit);
+        while (suggestedResources == null) {
+            suggestionsCount *= 2;
+            suggestedResources = getSuggestedResources(query, suggestionsCount, limit);
+        }
+
+        Set<String> fieldsToLoad = getFieldsToLoad(projection);
+        List<ScoredResource> resources = new ArrayList<>();
+        for (TopSuggestDocs.SuggestScoreDoc suggestion : suggestedResources) {
+            resources.add(buildScoredResource(suggestion, fieldsToLoad));
+        }
+        return new ResourceSearchResult(resources, resources.size(), null, null);
+    }
+
+    /**
+     * @return the best suggestion of each of the limit first suggested resources or null if more suggestions should
+     * be read to find them
+     */
+    private List<TopSuggestDocs.SuggestScoreDoc> getSuggestedResources(
+            CompletionQuery query, int suggestionsCount, int limit
+    ) throws IOException {
+        TopSuggestDocs.SuggestScoreDoc[] suggestions = entitiesReader.suggest(query, suggestionsCount).scoreLookupDocs();
+        Set<Integer> suggestedDocs = new HashSet<>();
+        List<TopSuggestDocs.SuggestScoreDoc> suggestedResources = new ArrayList<>();
+        for (TopSuggestDocs.SuggestScoreDoc suggestion : suggestions) {
+            if (suggestedResources.size() < limit && suggestedDocs.add(suggestion.doc)) {
+                suggestedResources.add(suggestion);
             }
+        }
+        return (suggestedResources.size() < limit && suggestions.length == suggestionsCount) ? null : suggestedResources;
+    }
+
+    private Query buildQueryForPhraseAndOrType(Locale locale, String label, String type, int fuziness) {
+        if (isIgnoredType(type)) {
+            return buildFuzzyQueryForTerm(locale, label, fuziness);
         } else {
-            type = Namespaces.reduce(type);
-            if (label == null) {
-                return addScoreBoostToQuery(buildTermQuery("@type", type));
-            } else {
-                return addScoreBoostToQuery(new BooleanQuery.Builder()
-                        .add(buildFuzzyQueryForTerm(locale, label, fuziness), BooleanClause.Occur.MUST)
-                        .add(buildTermQuery("@type", type), BooleanClause.Occur.FILTER)
-                        .build());
-            }
+            return new BooleanQuery.Builder()
+                    .add(buildFuzzyQueryForTerm(locale, label, fuziness), BooleanClause.Occur.MUST)
+                    .add(buildTypeQuery(type), BooleanClause.Occur.FILTER)
+                    .build();
+        }
+    }
+
+    private Query buildTypeQuery(String type) {
+        if (isIgnoredType(type)) {
+            return new MatchAllDocsQuery();
+        } else {
+            return buildTermQuery("@type", Namespaces.reduce(type));
         }
     }
 
+    /**
+     * We ignore top types
+     */
+    private boolean isIgnoredType(String type) {
+        return type == null || Namespaces.TOP_INDIVIDUAL_CLASSES.contains(type);
+    }
+
     private Query buildFuzzyQueryForTerm(Locale locale, String label, int fuziness) {
-        String name = "label@" + locale.getLanguage(); //TODO: variants
-        Term term = new Term(name, label.toLowerCase(locale));
+        Term term = buildLabelTerm(locale, label);
         if (fuziness == 0) {
             return new TermQuery(term);
         } else {
@@ -102,53 +220,106 @@ public class LuceneLookup implements StorageLookup {
         }
     }
 
-    private Query buildTermQuery(String field, String label) {
-        return new TermQuery(new Term(field, label));
+    private Term buildLabelTerm(Locale locale, String label) {
+        return new Term("label@" + locale.getLanguage(), label.toLowerCase(locale)); //TODO: variants
     }
 
-    private Query addScoreBoostToQuery(Query query) {
-        return new FunctionScoreQuery(query, DoubleValuesSource.fromIntField("score"));
+    private Query buildTermQuery(String field, String label) {
+        return new TermQuery(new Term(field, label));
     }
 
-    private ResourceSearchResult buildSearchResult(TopDocs topDocs, ScoreDoc currentContinue, ScoreDoc nextContinue, int fuziness) throws IOException {
+    private ResourceSearchResult buildSearchResult(
+            TopDocs topDocs, Continue currentContinue, FieldDoc nextContinue, int fuziness, Set<String> fieldsToLoad
+    ) throws IOException {
         ScoreDoc[] scoreDocs = topDocs.scoreDocs;
         List<ScoredResource> searchResults = new ArrayList<>();
         for (ScoreDoc scoreDoc : scoreDocs) {
-            searchResults.add(buildScoredResource(scoreDoc));
+            searchResults.add(buildScoredResource(scoreDoc, fieldsToLoad));
         }
         return new ResourceSearchResult(
-                searchResults, topDocs.totalHits.value, serializeContinue(currentContinue, fuziness), serializeContinue(nextContinue, fuziness)
+                searchResults, topDocs.totalHits.value, topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO,
+                serializeContinue(currentContinue), serializeContinue(nextContinue, fuziness)
         );
     }
 
-    private ScoredResource buildScoredResource(ScoreDoc scoreDoc) throws IOException {
+    private ScoredResource buildScoredResource(ScoreDoc scoreDoc, Set<String> fieldsToLoad) throws IOException {
         return new ScoredResource(
-                RESOURCE_BUILDER.buildResource(entitiesReader.getDocumentForDocId(scoreDoc.doc)),
+                RESOURCE_BUILDER.buildResource(entitiesReader.getDocumentForDocId(scoreDoc.doc, fieldsToLoad)),
                 scoreDoc.score
         );
     }
 
+    /**
+     * The doc id is only used with the indexes without identifiers in their doc values
+     */
+    private FieldDoc buildAfter(Continue startAfter) {
+        if (startAfter == null) {
+            return null;
+        }
+        BytesRef id = (startAfter.id != null && entitiesReader.hasIdentifierDocValues()) ? new BytesRef(startAfter.id) : null;
+        return new FieldDoc(startAfter.doc, Float.NaN, new Object[]{startAfter.rank, id});
+    }
+
     private Continue parseContinue(String str) {
         if (str == null) {
             return null;
         }
 
-        String[] parts = str.split("\\|", 3);
-        return (parts.length == 3) ? new Continue(Integer.parseInt(parts[0]), Float.parseFloat(parts[1]), Integer.parseInt(parts[2])) : null;
+        String[] parts = str.split("\\|", 6);
+        if (parts.length != 6) {
+            return null;
+        }
+        try {
+            return new Continue(
+                    Long.parseLong(parts[0]),
+                    Long.parseLong(parts[1]),
+                    Integer.parseInt(parts[2]),
+                    Long.parseLong(parts[3]),
+                    Integer.parseInt(parts[4]),
+                    parts[5].isEmpty() ? null : parts[5]
+            );
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String serializeContinue(Continue startAfter) {
+        return (startAfter == null) ? null : serializeContinue(
+                startAfter.generation, startAfter.version, startAfter.fuziness, startAfter.rank, startAfter.doc, startAfter.id
+        );
     }
 
-    private String serializeContinue(ScoreDoc scoreDoc, int fuziness) {
-        return (scoreDoc == null) ? null : scoreDoc.doc + "|" + scoreDoc.score + "|" + fuziness;
+    private String serializeContinue(FieldDoc fieldDoc, int fuziness) {
+        if (fieldDoc == null) {
+            return null;
+        }
+        BytesRef id = (BytesRef) fieldDoc.fields[1];
+        return serializeContinue(
+                entitiesReader.getLeaseGeneration(), entitiesReader.getLeaseVersion(), fuziness,
+                (Long) fieldDoc.fields[0], fieldDoc.doc, (id == null) ? null : id.utf8ToString()
+        );
     }
 
-    private static class Continue extends ScoreDoc {
+    private String serializeContinue(long generation, long version, int fuziness, long rank, int doc, String id) {
+        return generation + "|" + version + "|" + fuziness + "|" + rank + "|" + doc + "|" + ((id == null) ? "" : id);
+    }
 
-        int fuziness;
+    private static class Continue {
 
-        Continue(int doc, float score, int fuziness) {
-            super(doc, score);
+        final long generation;
+        final long version;
+        final int fuziness;
+        final long rank;
+        final int doc;
+        final String id;
 
+        Continue(long generation, long version, int fuziness, long rank, int doc, String id) {
+            this.generation = generation;
+            this.version = version;
             this.fuziness = fuziness;
+            this.rank = rank;
+            this.doc = doc;
+            this.id = id;
         }
     }
 }
@@ -18,6 +18,7 @@
 package us.askplatyp.kb.lucene.lucene;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import us.askplatyp.kb.lucene.Configuration;
@@ -26,70 +27,91 @@ import us.askplatyp.kb.lucene.model.Resource;
 import us.askplatyp.kb.lucene.model.Schema;
 import us.askplatyp.kb.lucene.model.value.*;
 
-import java.util.Locale;
+import java.util.*;
+import java.util.function.BiConsumer;
 
+/**
+ * Decodes stored Lucene documents into {@link Resource}s.
+ * <p>
+ * The mapping from stored field names to value constructors is computed once from the {@link Schema}
+ * so a document is decoded in a single pass over its stored fields.
+ *
+ * @author Thomas Pellissier Tanon
+ */
 class LuceneResourceBuilder {
     private static final Logger LOGGER = LoggerFactory.getLogger(LuceneResourceBuilder.class);
     private static final Schema SCHEMA = Schema.getSchema();
 
-    Resource buildResource(Document document) {
-        Resource resource = new Resource(document.get("@id"));
-        addTypes(resource, document);
-        addClaims(resource, document);
-        return resource;
-    }
+    private final Map<String, BiConsumer<Resource, String>> decoders;
 
-    private void addTypes(Resource resource, Document document) {
-        for (String typeIRI : document.getValues("@type")) {
-            resource.addType(typeIRI);
-        }
+    LuceneResourceBuilder() {
+        decoders = Collections.unmodifiableMap(buildDecoders());
     }
 
-    private void addClaims(Resource resource, Document document) {
+    private static Map<String, BiConsumer<Resource, String>> buildDecoders() {
+        Map<String, BiConsumer<Resource, String>> decoders = new HashMap<>();
+        decoders.put("@type", Resource::addType);
         SCHEMA.getProperties().forEach(property -> {
+            String propertyIRI = property.getIRI();
             switch (property.getSimpleRange()) {
                 case CALENDAR:
-                    for (String value : document.getValues(property.getIRI())) {
-                        resource.addClaim(new Claim(property.getIRI(), new CalendarValue(value)));
-                    }
+                    decoders.put(propertyIRI, (resource, value) ->
+                            resource.addClaim(new Claim(propertyIRI, new CalendarValue(value))));
                     break;
                 case CONSTANT:
-                    for (String value : document.getValues(property.getIRI())) {
-                        resource.addClaim(new Claim(property.getIRI(), new ConstantValue(value)));
-                    }
+                    decoders.put(propertyIRI, (resource, value) ->
+                            resource.addClaim(new Claim(propertyIRI, new ConstantValue(value))));
                     break;
                 case GEO:
-                    for (String value : document.getValues(property.getIRI())) {
-                        resource.addClaim(new Claim(property.getIRI(), GeoValue.buildGeoValue(value)));
-                    }
+                    decoders.put(propertyIRI, (resource, value) ->
+                            resource.addClaim(new Claim(propertyIRI, GeoValue.buildGeoValue(value))));
                     break;
                 case INTEGER:
-                    for (String value : document.getValues(property.getIRI())) {
-                        resource.addClaim(new Claim(property.getIRI(), new IntegerValue(value)));
-                    }
+                    decoders.put(propertyIRI, (resource, value) ->
+                            resource.addClaim(new Claim(propertyIRI, new IntegerValue(value))));
                     break;
                 case LOCAL_STRING:
-                    for (Locale locale : Configuration.SUPPORTED_LOCALES) { //TODO: bad
-                        for (String value : document.getValues(property.getIRI() + "@" + locale.getLanguage())) {
-                            resource.addClaim(new Claim(property.getIRI(), value, locale));
-                        }
-                    }
+                    localesByLanguage().forEach((language, locales) ->
+                            decoders.put(propertyIRI + "@" + language, (resource, value) -> {
+                                for (Locale locale : locales) {
+                                    resource.addClaim(new Claim(propertyIRI, value, locale));
+                                }
+                            }));
                     break;
                 case RESOURCE:
-                    for (String value : document.getValues(property.getIRI())) {
-                        resource.addClaim(new Claim(property.getIRI(), new ResourceValue(value)));
-                    }
+                    decoders.put(propertyIRI, (resource, value) ->
+                            resource.addClaim(new Claim(propertyIRI, new ResourceValue(value))));
                     break;
                 case STRING:
                 case IRI:
-                    for (String value : document.getValues(property.getIRI())) {
-                        resource.addClaim(new Claim(property.getIRI(), value));
-                    }
+                    decoders.put(propertyIRI, (resource, value) ->
+                            resource.addClaim(new Claim(propertyIRI, value)));
                     break;
                 default:
                     LOGGER.warn("Unsupported simple range type: " + property.getSimpleRange().toString());
-
             }
         });
+        return decoders;
+    }
+
+    private static Map<String, Locale[]> localesByLanguage() {
+        Map<String, List<Locale>> locales = new HashMap<>();
+        for (Locale locale : Configuration.SUPPORTED_LOCALES) {
+            locales.computeIfAbsent(locale.getLanguage(), language -> new ArrayList<>()).add(locale);
+        }
+        Map<String, Locale[]> result = new HashMap<>();
+        locales.forEach((language, languageLocales) -> result.put(language, languageLocales.toArray(new Locale[0])));
+        return result;
+    }
+
+    Resource buildResource(Document document) {
+        Resource resource = new Resource(document.get("@id"));
+        for (IndexableField field : document.getFields()) {
+            BiConsumer<Resource, String> decoder = decoders.get(field.name());
+            if (decoder != null) {
+                decoder.accept(resource, field.stringValue());
+            }
+        }
+        return resource;
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.lucene;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Resolves unique keys like "@id" to document ids by seeking directly into the terms dictionary of each segment.
+ * <p>
+ * The per segment terms enumerations are reused between lookups so an instance should not be shared between threads.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class PrimaryKeyLookup {
+
+    private final String field;
+    private final List<LeafReaderContext> leaves;
+    private final TermsEnum[] termsEnums;
+    private final boolean[] initialized;
+    private PostingsEnum postingsEnum;
+
+    PrimaryKeyLookup(IndexReader reader, String field) {
+        this.field = field;
+        this.leaves = reader.leaves();
+        this.termsEnums = new TermsEnum[leaves.size()];
+        this.initialized = new boolean[leaves.size()];
+    }
+
+    OptionalInt lookup(String key) throws IOException {
+        BytesRef term = new BytesRef(key);
+        // Newest segments are the most likely to contain a live version of the document
+        for (int i = leaves.size() - 1; i >= 0; i--) {
+            int docID = lookupInLeaf(i, term);
+            if (docID != DocIdSetIterator.NO_MORE_DOCS) {
+                return OptionalInt.of(docID);
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    /**
+     * Resolves multiple keys at once.
+     * The keys are looked up in sorted order so that each segment terms dictionary is traversed only forward.
+     *
+     * @return the document ids of the found keys
+     */
+    Map<String, Integer> lookupAll(Collection<String> keys) throws IOException {
+        List<BytesRef> remaining = new ArrayList<>(keys.size());
+        for (String key : new HashSet<>(keys)) {
+            remaining.add(new BytesRef(key));
+        }
+        Collections.sort(remaining);
+
+        Map<String, Integer> docIDs = new HashMap<>();
+        for (int i = leaves.size() - 1; i >= 0 && !remaining.isEmpty(); i--) {
+            Iterator<BytesRef> iterator = remaining.iterator();
+            while (iterator.hasNext()) {
+                BytesRef term = iterator.next();
+                int docID = lookupInLeaf(i, term);
+                if (docID != DocIdSetIterator.NO_MORE_DOCS) {
+                    docIDs.put(term.utf8ToString(), docID);
+                    iterator.remove();
+                }
+            }
+        }
+        return docIDs;
+    }
+
+    private int lookupInLeaf(int leafIndex, BytesRef term) throws IOException {
+        TermsEnum termsEnum = getTermsEnum(leafIndex);
+        if (termsEnum == null || !termsEnum.seekExact(term)) {
+            return DocIdSetIterator.NO_MORE_DOCS;
+        }
+        LeafReaderContext leaf = leaves.get(leafIndex);
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+        for (int docID = postingsEnum.nextDoc(); docID != DocIdSetIterator.NO_MORE_DOCS; docID = postingsEnum.nextDoc()) {
+            if (liveDocs == null || liveDocs.get(docID)) {
+                return leaf.docBase + docID;
+            }
+        }
+        return DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    private TermsEnum getTermsEnum(int leafIndex) throws IOException {
+        if (!initialized[leafIndex]) {
+            Terms terms = leaves.get(leafIndex).reader().terms(field);
+            termsEnums[leafIndex] = (terms == null) ? null : terms.iterator();
+            initialized[leafIndex] = true;
+        }
+        return termsEnums[leafIndex];
+    }
+}
@@ -35,7 +35,6 @@ import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.algebra.evaluation.TripleSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import us.askplatyp.kb.lucene.Configuration;
 import us.askplatyp.kb.lucene.lucene.LuceneIndex;
 import us.askplatyp.kb.lucene.model.Namespaces;
 import us.askplatyp.kb.lucene.model.Schema;
@@ -235,14 +234,9 @@ public class LuceneTripleSource implements TripleSource {
 
     private Stream<String> fieldsFromPropertyIRI(IRI propertyIRI) {
         String name = Namespaces.reduce(propertyIRI.stringValue());
-        return SCHEMA.getProperty(name).map(property -> {
-            if (property.getSimpleRange() == Schema.Range.LOCAL_STRING) {
-                return Arrays.stream(Configuration.SUPPORTED_LOCALES)
-                        .map(locale -> name + "@" + locale.getLanguage());
-            } else {
-                return Stream.of(name);
-            }
-        }).orElse(Stream.of(name));
+        return SCHEMA.getProperty(name)
+                .map(property -> property.getFieldNames().stream())
+                .orElse(Stream.of(name));
     }
 
     private Stream<Statement> formatField(Resource subject, IndexableField field) {
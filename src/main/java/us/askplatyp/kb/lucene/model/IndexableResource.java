@@ -25,7 +25,9 @@ import java.util.stream.Stream;
 
 public class IndexableResource extends Resource {
     private Set<LocaleStringValue> labels = new HashSet<>();
+    private Set<String> rawTypes = new HashSet<>();
     private int rank = 0;
+    private long revisionId = 0;
 
     public IndexableResource(String IRI) {
         super(IRI);
@@ -39,6 +41,17 @@ public class IndexableResource extends Resource {
         labels.add(value);
     }
 
+    /**
+     * @return the ids of the source classes of the resource when their mapping to types is done after the loading
+     */
+    public Stream<String> getRawTypes() {
+        return rawTypes.stream();
+    }
+
+    public void addRawType(String classId) {
+        rawTypes.add(classId);
+    }
+
     public int getRank() {
         return rank;
     }
@@ -46,4 +59,15 @@ public class IndexableResource extends Resource {
     public void addToRank(int val) {
         rank += val;
     }
+
+    /**
+     * @return the revision of the source entity or 0 if unknown
+     */
+    public long getRevisionId() {
+        return revisionId;
+    }
+
+    public void setRevisionId(long revisionId) {
+        this.revisionId = revisionId;
+    }
 }
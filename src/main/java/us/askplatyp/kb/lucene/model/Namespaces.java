@@ -19,9 +19,7 @@ package us.askplatyp.kb.lucene.model;
 
 import com.google.common.collect.Sets;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.*;
 
 /**
  * @author Thomas Pellissier Tanon
@@ -32,6 +30,10 @@ public class Namespaces {
     public static final String DEFAULT_NAMESPACE = "http://schema.org/";
     public static final Set<String> TOP_INDIVIDUAL_CLASSES = Sets.newHashSet("Thing", "Individual", "NamedIndividual");
     private static final Map<String, String> SPECIAL_CASES = new TreeMap<>();
+    private static final Map<String, String> REVERSE_SPECIAL_CASES = new HashMap<>();
+    private static final PrefixTrie NAMESPACE_TRIE = new PrefixTrie();
+    private static final String WIKIDATA_ENTITY_PREFIX = "wd:";
+    private static final String WIKIDATA_ENTITY_NAMESPACE = "http://www.wikidata.org/entity/";
 
     static {
         NAMESPACES.put("geo", "http://www.opengis.net/ont/geosparql#");
@@ -42,7 +44,7 @@ public class Namespaces {
         NAMESPACES.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
         NAMESPACES.put("rdfs", "http://www.w3.org/2000/01/rdf-schema#");
         NAMESPACES.put("schema", "http://schema.org/");
-        NAMESPACES.put("wd", "http://www.wikidata.org/entity/");
+        NAMESPACES.put("wd", WIKIDATA_ENTITY_NAMESPACE);
         NAMESPACES.put("wdt", "http://www.wikidata.org/prop/direct/");
         NAMESPACES.put("xsd", "http://www.w3.org/2001/XMLSchema#");
 
@@ -57,42 +59,118 @@ public class Namespaces {
         SPECIAL_CASES.put("owl:ObjectProperty", "ObjectProperty");
         SPECIAL_CASES.put("owl:NamedIndividual", "NamedIndividual");
         SPECIAL_CASES.put("owl:Thing", "Thing");
+
+        SPECIAL_CASES.forEach((qualifiedName, name) -> REVERSE_SPECIAL_CASES.putIfAbsent(name, qualifiedName));
+        NAMESPACES.forEach((prefix, namespace) -> NAMESPACE_TRIE.put(namespace, prefix));
     }
 
     public static String expand(String qualifiedName) {
-        for (Map.Entry<String, String> specialCase : SPECIAL_CASES.entrySet()) {
-            if (specialCase.getValue().equals(qualifiedName)) {
-                qualifiedName = specialCase.getKey();
-                break;
-            }
+        //Most of the expanded names are Wikidata entities
+        if (qualifiedName.startsWith(WIKIDATA_ENTITY_PREFIX)) {
+            return WIKIDATA_ENTITY_NAMESPACE.concat(qualifiedName.substring(WIKIDATA_ENTITY_PREFIX.length()));
+        }
+
+        String specialCase = REVERSE_SPECIAL_CASES.get(qualifiedName);
+        if (specialCase != null) {
+            qualifiedName = specialCase;
         }
 
         int namespaceEnd = qualifiedName.indexOf(':');
         if (namespaceEnd == -1) {
-            return DEFAULT_NAMESPACE + qualifiedName;
+            return DEFAULT_NAMESPACE.concat(qualifiedName);
         }
 
-        String prefix = qualifiedName.substring(0, namespaceEnd);
-        if (NAMESPACES.containsKey(prefix)) {
-            return NAMESPACES.get(prefix) + qualifiedName.substring(namespaceEnd + 1);
-        } else {
+        String namespace = NAMESPACES.get(qualifiedName.substring(0, namespaceEnd));
+        if (namespace == null) {
             return qualifiedName;
         }
+        return new StringBuilder(namespace.length() + qualifiedName.length() - namespaceEnd - 1)
+                .append(namespace)
+                .append(qualifiedName, namespaceEnd + 1, qualifiedName.length())
+                .toString();
     }
 
     public static String reduce(String IRI) {
+        //No other namespace starts with the Wikidata entity one
+        if (IRI.startsWith(WIKIDATA_ENTITY_NAMESPACE)) {
+            return WIKIDATA_ENTITY_PREFIX.concat(IRI.substring(WIKIDATA_ENTITY_NAMESPACE.length()));
+        }
         if (IRI.startsWith(DEFAULT_NAMESPACE)) {
             IRI = IRI.substring(DEFAULT_NAMESPACE.length());
         }
-        for (Map.Entry<String, String> namespace : NAMESPACES.entrySet()) {
-            if (IRI.startsWith(namespace.getValue())) {
-                IRI = namespace.getKey() + ":" + IRI.substring(namespace.getValue().length());
-                break;
+        PrefixTrie.Match match = NAMESPACE_TRIE.findPrefix(IRI);
+        if (match != null) {
+            IRI = new StringBuilder(match.value.length() + 1 + IRI.length() - match.length)
+                    .append(match.value)
+                    .append(':')
+                    .append(IRI, match.length, IRI.length())
+                    .toString();
+        }
+        String specialCase = SPECIAL_CASES.get(IRI);
+        return (specialCase == null) ? IRI : specialCase;
+    }
+
+    /**
+     * Minimal character trie returning the longest registered prefix of a string.
+     */
+    private static final class PrefixTrie {
+        private final Node root = new Node();
+
+        void put(String key, String value) {
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.getOrCreateChild(key.charAt(i));
             }
+            node.value = value;
         }
-        if (SPECIAL_CASES.containsKey(IRI)) {
-            IRI = SPECIAL_CASES.get(IRI);
+
+        Match findPrefix(String text) {
+            Node node = root;
+            Match match = null;
+            for (int i = 0; i < text.length() && node != null; i++) {
+                node = node.getChild(text.charAt(i));
+                if (node != null && node.value != null) {
+                    match = new Match(node.value, i + 1);
+                }
+            }
+            return match;
+        }
+
+        private static final class Node {
+            private char[] labels = new char[0];
+            private Node[] children = new Node[0];
+            private String value;
+
+            private Node getChild(char label) {
+                for (int i = 0; i < labels.length; i++) {
+                    if (labels[i] == label) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+
+            private Node getOrCreateChild(char label) {
+                Node child = getChild(label);
+                if (child == null) {
+                    child = new Node();
+                    labels = Arrays.copyOf(labels, labels.length + 1);
+                    children = Arrays.copyOf(children, children.length + 1);
+                    labels[labels.length - 1] = label;
+                    children[children.length - 1] = child;
+                }
+                return child;
+            }
+        }
+
+        private static final class Match {
+            private final String value;
+            private final int length;
+
+            private Match(String value, int length) {
+                this.value = value;
+                this.length = length;
+            }
         }
-        return IRI;
     }
 }
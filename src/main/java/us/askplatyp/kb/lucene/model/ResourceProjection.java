@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.model;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The part of a resource that should be loaded from the storage.
+ * <p>
+ * The IRI and the types of the resource are always loaded.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+public class ResourceProjection {
+
+    private Set<String> properties;
+    private Locale locale;
+
+    /**
+     * @param properties the properties to load
+     * @param locale     if not null only the language-tagged values in the language of this locale are loaded
+     */
+    public ResourceProjection(Set<String> properties, Locale locale) {
+        this.properties = Set.copyOf(properties);
+        this.locale = locale;
+    }
+
+    public Set<String> getProperties() {
+        return properties;
+    }
+
+    public Optional<Locale> getLocale() {
+        return Optional.ofNullable(locale);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(properties, locale);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ResourceProjection)) {
+            return false;
+        }
+        ResourceProjection projection = (ResourceProjection) other;
+        return properties.equals(projection.properties) && Objects.equals(locale, projection.locale);
+    }
+}
@@ -23,12 +23,23 @@ public class ResourceSearchResult {
 
     private List<ScoredResource> resources;
     private long totalHits;
+    private boolean isTotalHitsExact;
     private String currentContinue;
     private String nextContinue;
 
     public ResourceSearchResult(List<ScoredResource> resources, long totalHits, String currentContinue, String nextContinue) {
+        this(resources, totalHits, true, currentContinue, nextContinue);
+    }
+
+    /**
+     * @param isTotalHitsExact false if totalHits is only a lower bound of the number of results
+     */
+    public ResourceSearchResult(
+            List<ScoredResource> resources, long totalHits, boolean isTotalHitsExact, String currentContinue, String nextContinue
+    ) {
         this.resources = resources;
         this.totalHits = totalHits;
+        this.isTotalHitsExact = isTotalHitsExact;
         this.currentContinue = currentContinue;
         this.nextContinue = nextContinue;
     }
@@ -41,6 +52,10 @@ public class ResourceSearchResult {
         return totalHits;
     }
 
+    public boolean isTotalHitsExact() {
+        return isTotalHitsExact;
+    }
+
     public String getCurrentContinue() {
         return currentContinue;
     }
@@ -25,9 +25,9 @@ import org.semanticweb.owlapi.vocab.XSDVocabulary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import us.askplatyp.kb.lucene.Configuration;
+
+import java.util.*;
 import java.util.stream.Stream;
 
 /**
@@ -60,7 +60,8 @@ public class Schema {
 
     private static Schema SCHEMA;
     private OWLReasoner reasoner;
-    private Map<String, Property> properties = new HashMap<>();
+    private Map<String, Property> properties;
+    private Property[] propertyTable;
 
     private Schema(OWLOntology ontology) {
         this.ontology = ontology;
@@ -86,10 +87,15 @@ public class Schema {
     }
 
     private void loadProperties() {
-        ontology.dataPropertiesInSignature().map(DataProperty::new)
-                .forEach(property -> properties.put(property.getIRI(), property));
-        ontology.objectPropertiesInSignature().map(ObjectProperty::new)
-                .forEach(property -> properties.put(property.getIRI(), property));
+        Map<String, Property> properties = new HashMap<>();
+        Stream.<OWLPropertyDefinition>concat(
+                ontology.dataPropertiesInSignature().map(DataProperty::new),
+                ontology.objectPropertiesInSignature().map(ObjectProperty::new)
+        ).map(ResolvedProperty::new).forEach(property -> properties.put(property.getIRI(), property));
+        this.properties = Collections.unmodifiableMap(properties);
+        this.propertyTable = properties.values().stream()
+                .sorted(Comparator.comparing(Property::getIRI))
+                .toArray(Property[]::new);
     }
 
     public Optional<Property> getProperty(String propertyIRI) {
@@ -97,7 +103,7 @@ public class Schema {
     }
 
     public Stream<Property> getProperties() {
-        return properties.values().stream();
+        return Arrays.stream(propertyTable);
     }
 
     public enum Range {
@@ -117,6 +123,57 @@ public class Schema {
         boolean isFunctionalProperty();
 
         Range getSimpleRange();
+
+        /**
+         * @return the names of the fields used to store the values of this property
+         * (one per supported language for {@link Range#LOCAL_STRING} properties)
+         */
+        List<String> getFieldNames();
+    }
+
+    /**
+     * Snapshot of a property resolved against the ontology once at load time.
+     */
+    private static final class ResolvedProperty implements Property {
+        private final String IRI;
+        private final boolean functional;
+        private final Range range;
+        private final List<String> fieldNames;
+
+        private ResolvedProperty(OWLPropertyDefinition property) {
+            IRI = property.getIRI();
+            functional = property.isFunctionalProperty();
+            range = property.getSimpleRange();
+            if (range == Range.LOCAL_STRING) {
+                Set<String> fieldNames = new LinkedHashSet<>();
+                for (Locale locale : Configuration.SUPPORTED_LOCALES) {
+                    fieldNames.add(IRI + "@" + locale.getLanguage());
+                }
+                this.fieldNames = List.copyOf(fieldNames);
+            } else {
+                this.fieldNames = List.of(IRI);
+            }
+        }
+
+        @Override
+        public String getIRI() {
+            return IRI;
+        }
+
+        @Override
+        public boolean isFunctionalProperty() {
+            return functional;
+        }
+
+        @Override
+        public Range getSimpleRange() {
+            return range;
+        }
+
+        @Override
+        public List<String> getFieldNames() {
+            return fieldNames;
+        }
     }
 
     public class Class {
@@ -135,7 +192,15 @@ public class Schema {
         }
     }
 
-    private class ObjectProperty implements Property {
+    private interface OWLPropertyDefinition {
+        String getIRI();
+
+        boolean isFunctionalProperty();
+
+        Range getSimpleRange();
+    }
+
+    private class ObjectProperty implements OWLPropertyDefinition {
         private OWLObjectProperty self;
 
         private ObjectProperty(OWLObjectProperty self) {
@@ -170,7 +235,7 @@ public class Schema {
         }
     }
 
-    private class DataProperty implements Property {
+    private class DataProperty implements OWLPropertyDefinition {
         private OWLDataProperty self;
 
         private DataProperty(OWLDataProperty self) {
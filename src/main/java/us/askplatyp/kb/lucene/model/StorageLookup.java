@@ -18,11 +18,20 @@
 package us.askplatyp.kb.lucene.model;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 public interface StorageLookup {
     Optional<Resource> getResourceForIRI(String IRI) throws IOException;
 
-    ResourceSearchResult getResourcesForLabel(String label, String type, Locale inputLocale, String currentContinue, int limit) throws IOException;
+    /**
+     * @return the found resources indexed by the IRI given as input
+     */
+    Map<String, Resource> getResourcesForIRIs(Collection<String> IRIs, ResourceProjection projection) throws IOException;
+
+    ResourceSearchResult getResourcesForLabel(
+            String label, String type, Locale inputLocale, String currentContinue, int limit, ResourceProjection projection
+    ) throws IOException;
 }
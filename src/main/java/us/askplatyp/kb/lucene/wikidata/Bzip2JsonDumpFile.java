@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.dumpfiles.DumpContentType;
+import org.wikidata.wdtk.dumpfiles.MwDumpFile;
+import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFile;
+import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFileManager;
+import org.wikidata.wdtk.util.CompressionType;
+import org.wikidata.wdtk.util.DirectoryManager;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.WebResourceFetcherImpl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The bzip2 version of a Wikidata JSON dump.
+ * <p>
+ * Wikidata Toolkit only downloads the gzip version of the JSON dumps that could only be inflated on one thread.
+ * The bzip2 version is made of independent blocks that are decompressed in parallel by {@link ParallelJsonDumpReader}.
+ * It is downloaded next to the gzip version in the Wikidata Toolkit download directory.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+public class Bzip2JsonDumpFile implements MwDumpFile {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Bzip2JsonDumpFile.class);
+    private static final String DUMP_SITE_BASE_URL = "https://dumps.wikimedia.org/";
+
+    private final MwDumpFile jsonDump;
+    private final String downloadDirectory;
+    private DirectoryManager dumpDirectoryManager;
+
+    /**
+     * @param jsonDump          the JSON dump provided by Wikidata Toolkit
+     * @param downloadDirectory the download directory of the Wikidata Toolkit dump processing controller
+     */
+    public Bzip2JsonDumpFile(MwDumpFile jsonDump, String downloadDirectory) {
+        if (jsonDump.getDumpContentType() != DumpContentType.JSON) {
+            throw new IllegalArgumentException("Only the JSON dumps have a bzip2 version");
+        }
+        this.jsonDump = jsonDump;
+        this.downloadDirectory = downloadDirectory;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return jsonDump.isAvailable();
+    }
+
+    @Override
+    public String getProjectName() {
+        return jsonDump.getProjectName();
+    }
+
+    @Override
+    public String getDateStamp() {
+        return jsonDump.getDateStamp();
+    }
+
+    @Override
+    public DumpContentType getDumpContentType() {
+        return DumpContentType.JSON;
+    }
+
+    /**
+     * @return the dump decompressed on the calling thread
+     */
+    @Override
+    public InputStream getDumpFileStream() throws IOException {
+        return new BZip2CompressorInputStream(new BufferedInputStream(getCompressedStream()), true);
+    }
+
+    /**
+     * @return the bzip2 content of the dump
+     */
+    InputStream getCompressedStream() throws IOException {
+        prepareDumpFile();
+        return dumpDirectoryManager.getInputStreamForFile(getFileName(), CompressionType.NONE);
+    }
+
+    @Override
+    public BufferedReader getDumpFileReader() throws IOException {
+        return new BufferedReader(new InputStreamReader(getDumpFileStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized void prepareDumpFile() throws IOException {
+        if (dumpDirectoryManager == null) {
+            dumpDirectoryManager = DirectoryManagerFactory.createDirectoryManager(downloadDirectory, false)
+                    .getSubdirectoryManager(WmfDumpFileManager.DOWNLOAD_DIRECTORY_NAME)
+                    .getSubdirectoryManager(getProjectName())
+                    .getSubdirectoryManager(WmfDumpFile.getDumpFileDirectoryName(DumpContentType.JSON, getDateStamp()));
+        }
+        if (dumpDirectoryManager.hasFile(getFileName())) {
+            return;
+        }
+        String url = DUMP_SITE_BASE_URL + getProjectName() + "/entities/" + getDateStamp() + "/" + getFileName();
+        LOGGER.info("Downloading the bzip2 JSON dump from " + url);
+        try (InputStream inputStream = new WebResourceFetcherImpl().getInputStreamForUrl(url)) {
+            dumpDirectoryManager.createFileAtomic(getFileName(), inputStream);
+        }
+        LOGGER.info("Downloaded the bzip2 JSON dump from " + url);
+    }
+
+    private String getFileName() {
+        return "wikidata-" + getDateStamp() + "-all.json.bz2";
+    }
+
+    @Override
+    public String toString() {
+        return jsonDump.toString() + " (bzip2)";
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits the JSON array of a Wikidata dump into the serializations of its entities without parsing them.
+ * <p>
+ * It only tracks the string boundaries and the nesting of the objects so it is cheap enough to run on the thread
+ * doing the decompression while the entities are parsed by other threads.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class JsonDumpSplitter {
+
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+    private byte[] entity = new byte[1 << 12];
+
+    JsonDumpSplitter(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * @return the UTF-8 serialization of the next entity or null if the end of the dump is reached
+     */
+    byte[] next() throws IOException {
+        int length = 0;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        while (true) {
+            if (position == limit) {
+                limit = inputStream.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (depth > 0) {
+                        throw new IOException("The dump ends in the middle of an entity");
+                    }
+                    return null;
+                }
+            }
+            byte current = buffer[position++];
+            if (depth == 0 && current != '{') {
+                continue; //Array delimiters and whitespaces between entities
+            }
+            if (length == entity.length) {
+                entity = Arrays.copyOf(entity, 2 * length);
+            }
+            entity[length++] = current;
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (current == '\\') {
+                    escaped = true;
+                } else if (current == '"') {
+                    inString = false;
+                }
+            } else if (current == '"') {
+                inString = true;
+            } else if (current == '{') {
+                depth++;
+            } else if (current == '}') {
+                depth--;
+                if (depth == 0) {
+                    return Arrays.copyOf(entity, length);
+                }
+            }
+        }
+    }
+}
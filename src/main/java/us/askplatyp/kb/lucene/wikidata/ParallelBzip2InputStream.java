@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decompresses a bzip2 stream with its blocks inflated in parallel.
+ * <p>
+ * A bzip2 block starts with a 48 bits magic number and is not aligned on bytes. A "bzip2-block-finder" thread scans
+ * the compressed bits for the block and end of stream magic numbers and cuts them into segments. Each block segment
+ * is wrapped into a standalone single block bzip2 stream that is inflated by a task of the decompressor pool.
+ * The blocks are returned in the file order and the concatenated streams of the multistream files are supported.
+ * <p>
+ * The magic numbers may also appear inside of the compressed data. The block segment before such a false boundary
+ * fails its CRC check and is then merged with the following segments until it is valid.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class ParallelBzip2InputStream extends InputStream {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+    private static final int HEADER_BITS = 32;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int MAX_SEGMENT_SIZE = 1 << 23;
+    private static final int MAX_SEGMENT_MERGES = 8;
+    //The largest block size in order to be able to decode any block
+    private static final byte[] HEADER = {'B', 'Z', 'h', '9'};
+    private static final Segment END = new Segment(0, new byte[0], 0, false);
+    private static final byte[] NO_CONTENT = new byte[0];
+
+    private final BlockingQueue<Segment> segments;
+    private final ExecutorService decompressors;
+    private final Thread finder;
+    private volatile IOException failure;
+    private Segment pending;
+    private byte[] current = new byte[0];
+    private int position = 0;
+
+    /**
+     * @param threads number of threads decompressing the blocks
+     */
+    ParallelBzip2InputStream(InputStream source, int threads) {
+        segments = new ArrayBlockingQueue<>(4 * threads);
+        AtomicInteger threadCount = new AtomicInteger();
+        decompressors = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bzip2-decompressor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        finder = new Thread(() -> findSegments(source), "bzip2-block-finder");
+        finder.setDaemon(true);
+        finder.start();
+    }
+
+    private void findSegments(InputStream source) {
+        try (InputStream input = source) {
+            byte[] header = input.readNBytes(HEADER.length);
+            if (header.length < HEADER.length || header[0] != 'B' || header[1] != 'Z' || header[2] != 'h' ||
+                    header[3] < '1' || header[3] > '9') {
+                throw new IOException("The stream is not a bzip2 stream");
+            }
+
+            //The bytes read since the first byte of the current segment
+            byte[] buffer = new byte[MAX_SEGMENT_SIZE];
+            int bufferLength = 0;
+            long bufferStart = 0;
+            long segmentStart = -1;
+            boolean isBlock = false;
+
+            long window = 0;
+            for (byte value : header) {
+                window = (window << 8) | (value & 0xff);
+            }
+            long bytesRead = HEADER.length;
+            byte[] chunk = new byte[CHUNK_SIZE];
+            for (int length = input.read(chunk); length != -1; length = input.read(chunk)) {
+                for (int i = 0; i < length; i++) {
+                    window = (window << 8) | (chunk[i] & 0xff);
+                    bytesRead++;
+                    if (segmentStart >= 0) {
+                        if (bufferLength == MAX_SEGMENT_SIZE) {
+                            throw new IOException("No bzip2 block boundary found after the bit " + segmentStart);
+                        }
+                        buffer[bufferLength++] = chunk[i];
+                    }
+                    //The earliest magic number first
+                    for (int shift = 7; shift >= 0; shift--) {
+                        long bits = (window >>> shift) & MAGIC_MASK;
+                        if (bits != BLOCK_MAGIC && bits != END_OF_STREAM_MAGIC) {
+                            continue;
+                        }
+                        long magicStart = 8 * bytesRead - shift - 48;
+                        if (magicStart < HEADER_BITS) {
+                            continue;
+                        }
+                        if (segmentStart >= 0) {
+                            int end = (int) ((magicStart + 7) / 8 - bufferStart);
+                            emit(new Segment(segmentStart, Arrays.copyOf(buffer, end), magicStart - segmentStart, isBlock));
+                            int start = (int) (magicStart / 8 - bufferStart);
+                            System.arraycopy(buffer, start, buffer, 0, bufferLength - start);
+                            bufferLength -= start;
+                        } else {
+                            //The first segment: the buffer is filled with the bytes of its magic number
+                            bufferLength = (int) (bytesRead - magicStart / 8);
+                            for (int j = 0; j < bufferLength; j++) {
+                                buffer[j] = (byte) (window >>> (8 * (bufferLength - 1 - j)));
+                            }
+                        }
+                        bufferStart = magicStart / 8;
+                        segmentStart = magicStart;
+                        isBlock = bits == BLOCK_MAGIC;
+                    }
+                }
+            }
+            if (segmentStart >= 0) {
+                emit(new Segment(segmentStart, Arrays.copyOf(buffer, bufferLength), 8 * bytesRead - segmentStart, isBlock));
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); //The stream has been closed
+        } catch (RuntimeException | Error e) {
+            failure = new IOException("The reading of the bzip2 stream has failed", e);
+        } finally {
+            if (!Thread.currentThread().isInterrupted()) {
+                try {
+                    segments.put(END);
+                } catch (InterruptedException e) {
+                    //The stream has been closed
+                }
+            }
+        }
+    }
+
+    private void emit(Segment segment) throws InterruptedException {
+        if (segment.isBlock) {
+            segment.content = decompressors.submit(segment::decompress);
+        }
+        segments.put(segment);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        return (read(buffer, 0, 1) == -1) ? -1 : buffer[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (current == NO_CONTENT) {
+                return -1;
+            }
+            current = nextBlockContent();
+            position = 0;
+        }
+        int read = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    /**
+     * @return the content of the next block or {@link #NO_CONTENT} at the end of the stream
+     */
+    private byte[] nextBlockContent() throws IOException {
+        Segment segment = takeSegment();
+        while (segment != END && !segment.isBlock) {
+            segment = takeSegment();
+        }
+        if (segment == END) {
+            pending = END;
+            if (failure != null) {
+                throw failure;
+            }
+            return NO_CONTENT;
+        }
+        try {
+            return segment.content.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the bzip2 blocks");
+        } catch (ExecutionException e) {
+            return decompressMerged(segment);
+        }
+    }
+
+    /**
+     * The segment ends with a magic number found inside of the compressed data
+     */
+    private byte[] decompressMerged(Segment segment) throws IOException {
+        for (int i = 0; i < MAX_SEGMENT_MERGES; i++) {
+            Segment next = takeSegment();
+            if (next == END) {
+                pending = END;
+                break;
+            }
+            if (next.content != null) {
+                next.content.cancel(false);
+            }
+            segment = segment.append(next);
+            try {
+                return segment.decompress();
+            } catch (IOException | RuntimeException e) {
+                //The merged segment still ends inside of the block
+            }
+        }
+        throw new IOException("Not able to decompress the bzip2 block starting at the bit " + segment.start);
+    }
+
+    private Segment takeSegment() throws IOException {
+        if (pending != null) {
+            Segment segment = pending;
+            pending = (pending == END) ? END : null;
+            return segment;
+        }
+        try {
+            return segments.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the bzip2 blocks");
+        }
+    }
+
+    @Override
+    public void close() {
+        finder.interrupt();
+        decompressors.shutdownNow();
+    }
+
+    /**
+     * Bits of the compressed stream between two magic numbers
+     */
+    static final class Segment {
+        private final long start;
+        //The bytes from the one containing the first bit of the segment to the one containing its last bit
+        private final byte[] data;
+        private final long length;
+        private final boolean isBlock;
+        private Future<byte[]> content;
+
+        /**
+         * @param start   the position of the first bit of the segment in the compressed stream
+         * @param length  the number of bits of the segment
+         * @param isBlock if the segment starts with a block magic number
+         */
+        Segment(long start, byte[] data, long length, boolean isBlock) {
+            this.start = start;
+            this.data = data;
+            this.length = length;
+            this.isBlock = isBlock;
+        }
+
+        /**
+         * @param next the segment starting at the end of this one
+         */
+        Segment append(Segment next) {
+            int overlap = (int) ((start + length) / 8 - start / 8);
+            byte[] merged = Arrays.copyOf(data, overlap + next.data.length);
+            System.arraycopy(next.data, 0, merged, overlap, next.data.length);
+            return new Segment(start, merged, length + next.length, isBlock);
+        }
+
+        /**
+         * Decompresses the block as a standalone stream: the stream CRC of a single block stream is the block CRC
+         */
+        byte[] decompress() throws IOException {
+            int offset = (int) (start % 8);
+            byte[] stream = new byte[(int) ((HEADER_BITS + length + 80 + 7) / 8)];
+            System.arraycopy(HEADER, 0, stream, 0, HEADER.length);
+            //The segment bits are shifted in order to be aligned on the bytes after the header
+            int fullBytes = (int) (length / 8);
+            for (int i = 0; i < fullBytes; i++) {
+                int next = (i + 1 < data.length) ? data[i + 1] & 0xff : 0;
+                stream[HEADER.length + i] = (byte) ((((data[i] & 0xff) << 8) | next) >>> (8 - offset));
+            }
+            long position = HEADER_BITS + 8L * fullBytes;
+            position = writeBits(stream, position, readBits(offset + 8L * fullBytes, (int) (length % 8)), (int) (length % 8));
+            position = writeBits(stream, position, END_OF_STREAM_MAGIC, 48);
+            writeBits(stream, position, readBits(offset + 48, 32), 32);
+            try (InputStream inputStream = new BZip2CompressorInputStream(new ByteArrayInputStream(stream))) {
+                return inputStream.readAllBytes();
+            }
+        }
+
+        private long readBits(long position, int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                long bit = position + i;
+                value = (value << 1) | ((data[(int) (bit / 8)] >>> (7 - bit % 8)) & 1);
+            }
+            return value;
+        }
+
+        private static long writeBits(byte[] bytes, long position, long value, int count) {
+            for (int i = count - 1; i >= 0; i--, position++) {
+                if (((value >>> i) & 1) != 0) {
+                    bytes[(int) (position / 8)] |= 0x80 >>> (position % 8);
+                }
+            }
+            return position;
+        }
+    }
+}
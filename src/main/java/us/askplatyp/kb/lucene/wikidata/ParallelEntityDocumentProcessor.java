@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs an {@link EntityDocumentProcessor} on multiple worker threads.
+ * <p>
+ * The documents are dispatched to the workers according to their entity id so the revisions of a given entity are
+ * always processed in order. Each worker has a bounded queue: the thread reading the dump is blocked when it is full.
+ * <p>
+ * The wrapped processor should be thread-safe.
+ * <p>
+ * If the processing of a document fails the following documents are ignored and the failure is thrown on the
+ * calling thread by the next {@link #flush()} or processing call.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+public class ParallelEntityDocumentProcessor implements EntityDocumentProcessor, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelEntityDocumentProcessor.class);
+    private static final Runnable STOP = () -> {
+    };
+
+    private final EntityDocumentProcessor processor;
+    private final BlockingQueue<Runnable>[] queues;
+    private final Thread[] workers;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    @SuppressWarnings("unchecked")
+    public ParallelEntityDocumentProcessor(EntityDocumentProcessor processor, int threads, int queueSize) {
+        this.processor = processor;
+        this.queues = new BlockingQueue[threads];
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueSize);
+            queues[i] = queue;
+            workers[i] = new Thread(() -> work(queue), "entity-processor-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    private void work(BlockingQueue<Runnable> queue) {
+        try {
+            for (Runnable task = queue.take(); task != STOP; task = queue.take()) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    //The worker keeps draining its queue so that the flushes and the dispatches are never blocked
+                    LOGGER.error(e.getMessage(), e);
+                    failure.compareAndSet(null, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void processItemDocument(ItemDocument itemDocument) {
+        dispatch(itemDocument, processor::processItemDocument);
+    }
+
+    @Override
+    public void processPropertyDocument(PropertyDocument propertyDocument) {
+        dispatch(propertyDocument, processor::processPropertyDocument);
+    }
+
+    private <T extends EntityDocument> void dispatch(T document, Consumer<T> action) {
+        throwFailure();
+        int worker = Math.floorMod(document.getEntityId().getId().hashCode(), queues.length);
+        put(queues[worker], () -> {
+            if (failure.get() == null) {
+                action.accept(document);
+            }
+        });
+    }
+
+    private void throwFailure() {
+        Throwable e = failure.get();
+        if (e != null) {
+            throw new IllegalStateException("The processing of an entity failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void put(BlockingQueue<Runnable> queue, Runnable task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the entity processors", e);
+        }
+    }
+
+    /**
+     * Waits for all the documents already received to be processed.
+     *
+     * @throws IllegalStateException if the processing of one of them failed
+     */
+    public void flush() {
+        CountDownLatch latch = new CountDownLatch(queues.length);
+        for (BlockingQueue<Runnable> queue : queues) {
+            put(queue, latch::countDown);
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the entity processors", e);
+        }
+        throwFailure();
+    }
+
+    @Override
+    public void close() {
+        for (BlockingQueue<Runnable> queue : queues) {
+            put(queue, STOP);
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
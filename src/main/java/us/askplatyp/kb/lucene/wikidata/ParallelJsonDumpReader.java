@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelMapper;
+import org.wikidata.wdtk.datamodel.implementation.EntityDocumentImpl;
+import org.wikidata.wdtk.datamodel.implementation.SnakImpl;
+import org.wikidata.wdtk.datamodel.interfaces.*;
+import org.wikidata.wdtk.dumpfiles.MwDumpFile;
+import org.wikidata.wdtk.dumpfiles.MwLocalDumpFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads Wikidata JSON dumps with the parsing of the entities spread over a pool of threads.
+ * <p>
+ * The bzip2 dumps, like {@link Bzip2JsonDumpFile}, are made of independent blocks that are decompressed in parallel by
+ * {@link ParallelBzip2InputStream}. The gzip dumps downloaded by Wikidata Toolkit are single member gzip files that
+ * could only be inflated sequentially: their decompression runs on the {@link ReadAheadInputStream} thread,
+ * concurrently with the rest of the pipeline but on a single core. A "dump-splitter" thread cuts the
+ * decompressed bytes into batches of entities and each batch is parsed by a task of the parser pool.
+ * The parsed entities are given to the processor on the calling thread in the dump order so the positions used by
+ * {@link ResumableEntityDocumentProcessor} stay the same as with a sequential reading.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+public class ParallelJsonDumpReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelJsonDumpReader.class);
+    private static final String SITE_IRI = "http://www.wikidata.org/entity/";
+    private static final int BATCH_SIZE = 256;
+    private static final Future<List<EntityDocument>> END = CompletableFuture.completedFuture(Collections.emptyList());
+
+    private static final DatamodelMapper MAPPER = new DatamodelMapper(SITE_IRI);
+
+    private final EntityDocumentProcessor processor;
+    private final EntityDocumentProcessor filteredProcessor;
+    private final Set<String> languageFilter;
+    private final int threads;
+    private final ObjectReader documentReader = MAPPER
+            .readerFor(EntityDocumentImpl.class)
+            .with(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT);
+    private TrimmedItemDocumentParser itemParser;
+
+    /**
+     * @param languageFilter the languages of the terms to keep or null to keep all of them
+     * @param threads        number of threads parsing the entities
+     */
+    public ParallelJsonDumpReader(EntityDocumentProcessor processor, Set<String> languageFilter, int threads) {
+        this.processor = processor;
+        if (languageFilter == null) {
+            this.filteredProcessor = processor;
+        } else {
+            DocumentDataFilter filter = new DocumentDataFilter();
+            filter.setLanguageFilter(languageFilter);
+            this.filteredProcessor = new EntityDocumentProcessorFilter(processor, filter);
+        }
+        this.languageFilter = languageFilter;
+        this.threads = threads;
+    }
+
+    /**
+     * Parses the items with {@link TrimmedItemDocumentParser}: they only contain the terms in the filtered languages,
+     * the site links and the best statements of the given properties.
+     *
+     * @param propertyIds the ids of the properties whose statements are used by the processor
+     */
+    public void setItemPropertyFilter(Set<String> propertyIds) {
+        this.itemParser = new TrimmedItemDocumentParser(MAPPER.readerFor(SnakImpl.class), languageFilter, propertyIds);
+    }
+
+    public void processDump(MwDumpFile dump) throws IOException {
+        BlockingQueue<Future<List<EntityDocument>>> batches = new ArrayBlockingQueue<>(4 * threads);
+        ExecutorService parsers = buildParsers();
+        InputStream inputStream = openDumpStream(dump, threads);
+        Thread splitter = new Thread(() -> split(inputStream, batches, parsers), "dump-splitter");
+        splitter.setDaemon(true);
+        splitter.start();
+
+        try {
+            for (Future<List<EntityDocument>> batch = batches.take(); batch != END; batch = batches.take()) {
+                for (EntityDocument document : batch.get()) {
+                    dispatch(document);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + dump, e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            splitter.interrupt();
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * The bzip2 dumps are decompressed in parallel, the other ones on a read-ahead thread
+     *
+     * @param threads number of threads decompressing the bzip2 dumps
+     */
+    static InputStream openDumpStream(MwDumpFile dump, int threads) throws IOException {
+        if (dump instanceof Bzip2JsonDumpFile) {
+            return new ParallelBzip2InputStream(((Bzip2JsonDumpFile) dump).getCompressedStream(), threads);
+        }
+        if (dump instanceof MwLocalDumpFile && ((MwLocalDumpFile) dump).getPath().toString().endsWith(".bz2")) {
+            return new ParallelBzip2InputStream(Files.newInputStream(((MwLocalDumpFile) dump).getPath()), threads);
+        }
+        return new ReadAheadInputStream(dump.getDumpFileStream());
+    }
+
+    private ExecutorService buildParsers() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "dump-parser-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void split(InputStream inputStream, BlockingQueue<Future<List<EntityDocument>>> batches, ExecutorService parsers) {
+        try (InputStream input = inputStream) {
+            JsonDumpSplitter splitter = new JsonDumpSplitter(input);
+            List<byte[]> batch = new ArrayList<>(BATCH_SIZE);
+            for (byte[] entity = splitter.next(); entity != null; entity = splitter.next()) {
+                batch.add(entity);
+                if (batch.size() == BATCH_SIZE) {
+                    batches.put(submit(parsers, batch));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            batches.put(submit(parsers, batch));
+            batches.put(END);
+        } catch (IOException | RuntimeException e) {
+            try {
+                batches.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException e2) {
+                //The reading has been stopped
+            }
+        } catch (InterruptedException e) {
+            //The reading has been stopped
+        }
+    }
+
+    private Future<List<EntityDocument>> submit(ExecutorService parsers, List<byte[]> batch) {
+        return parsers.submit(() -> parse(batch));
+    }
+
+    private List<EntityDocument> parse(List<byte[]> batch) {
+        List<EntityDocument> documents = new ArrayList<>(batch.size());
+        for (byte[] entity : batch) {
+            try {
+                EntityDocument document = (itemParser == null) ? null : itemParser.parse(entity);
+                documents.add((document == null) ? documentReader.readValue(entity) : document);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Not able to parse an entity of the dump: " + e.getMessage());
+            }
+        }
+        return documents;
+    }
+
+    private void dispatch(EntityDocument document) {
+        if (document instanceof ItemDocument) {
+            //The trimmed items are already filtered
+            (itemParser == null ? filteredProcessor : processor).processItemDocument((ItemDocument) document);
+        } else if (document instanceof PropertyDocument) {
+            filteredProcessor.processPropertyDocument((PropertyDocument) document);
+        } else if (document instanceof LexemeDocument) {
+            filteredProcessor.processLexemeDocument((LexemeDocument) document);
+        } else if (document instanceof MediaInfoDocument) {
+            filteredProcessor.processMediaInfoDocument((MediaInfoDocument) document);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a stream in large chunks on a dedicated thread.
+ * <p>
+ * Used on top of the decompressing dump streams so that the decompression, which stays single threaded, overlaps
+ * with the processing of the previous chunks.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class ReadAheadInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int CHUNK_COUNT = 16;
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNK_COUNT);
+    private final Thread thread;
+    private volatile IOException failure;
+    private byte[] current = new byte[0];
+    private int position = 0;
+
+    ReadAheadInputStream(InputStream source) {
+        thread = new Thread(() -> readAhead(source), "dump-read-ahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void readAhead(InputStream source) {
+        try (InputStream input = source) {
+            int length = CHUNK_SIZE;
+            while (length == CHUNK_SIZE) {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                length = input.readNBytes(chunk, 0, CHUNK_SIZE);
+                if (length > 0) {
+                    chunks.put((length == CHUNK_SIZE) ? chunk : Arrays.copyOf(chunk, length));
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); //The stream has been closed
+        } catch (RuntimeException | Error e) {
+            failure = new IOException("The reading of the dump has failed", e);
+        } finally {
+            if (!Thread.currentThread().isInterrupted()) {
+                try {
+                    chunks.put(END);
+                } catch (InterruptedException e) {
+                    //The stream has been closed
+                }
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        return (read(buffer, 0, 1) == -1) ? -1 : buffer[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (current == END) {
+                return -1;
+            }
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the dump content");
+            }
+            position = 0;
+            if (current == END && failure != null) {
+                throw failure;
+            }
+        }
+        int read = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+}
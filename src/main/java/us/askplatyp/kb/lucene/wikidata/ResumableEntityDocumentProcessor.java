@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.OptionalLong;
+
+/**
+ * Saves periodically the position reached in the dump being processed and skips on restart the entities that have
+ * already been processed before the last checkpoint.
+ * <p>
+ * The compressed dumps could not be read from an arbitrary position so the skipped entities are still parsed but
+ * they are not mapped nor indexed again.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+public class ResumableEntityDocumentProcessor implements EntityDocumentProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResumableEntityDocumentProcessor.class);
+
+    private final ParallelEntityDocumentProcessor processor;
+    private final CheckpointStore checkpointStore;
+    private final long checkpointInterval;
+    private String dumpId;
+    private long position = 0;
+    private long resumePosition = 0;
+
+    /**
+     * @param checkpointInterval number of entities between two checkpoints
+     */
+    public ResumableEntityDocumentProcessor(ParallelEntityDocumentProcessor processor, CheckpointStore checkpointStore, long checkpointInterval) {
+        this.processor = processor;
+        this.checkpointStore = checkpointStore;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Should be called before the processing of each dump
+     *
+     * @param dumpId identifier of the dump, stable across restarts
+     */
+    public void startDump(String dumpId) {
+        this.dumpId = dumpId;
+        position = 0;
+        resumePosition = checkpointStore.getCheckpoint(dumpId).orElse(0);
+        if (resumePosition > 0) {
+            LOGGER.info("Resuming the processing of " + dumpId + " after its " + resumePosition + " first entities");
+        }
+    }
+
+    /**
+     * Waits for the end of the processing of the dump
+     */
+    public void finishDump() {
+        processor.flush();
+        dumpId = null;
+    }
+
+    /**
+     * Waits for the end of the processing of the entities already read and saves a checkpoint after them
+     * if none of them failed
+     */
+    public void interruptDump() {
+        try {
+            processor.flush();
+        } catch (IllegalStateException e) {
+            //The entities after the last checkpoint should be processed again
+            dumpId = null;
+            return;
+        }
+        if (dumpId != null && position > resumePosition) {
+            try {
+                checkpointStore.saveCheckpoint(dumpId, position);
+            } catch (IOException e) {
+                LOGGER.error("Saving of the checkpoint of " + dumpId + " failed", e);
+            }
+        }
+        dumpId = null;
+    }
+
+    @Override
+    public void processItemDocument(ItemDocument itemDocument) {
+        if (shouldProcess()) {
+            processor.processItemDocument(itemDocument);
+            maybeCheckpoint();
+        }
+    }
+
+    @Override
+    public void processPropertyDocument(PropertyDocument propertyDocument) {
+        if (shouldProcess()) {
+            processor.processPropertyDocument(propertyDocument);
+            maybeCheckpoint();
+        }
+    }
+
+    private boolean shouldProcess() {
+        position++;
+        return position > resumePosition;
+    }
+
+    private void maybeCheckpoint() {
+        if (dumpId != null && position % checkpointInterval == 0) {
+            processor.flush();
+            try {
+                checkpointStore.saveCheckpoint(dumpId, position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public interface CheckpointStore {
+
+        /**
+         * @return the number of entities of the dump already processed
+         */
+        OptionalLong getCheckpoint(String dumpId);
+
+        /**
+         * Should durably save the checkpoint and the resources processed before it
+         */
+        void saveCheckpoint(String dumpId, long position) throws IOException;
+    }
+}
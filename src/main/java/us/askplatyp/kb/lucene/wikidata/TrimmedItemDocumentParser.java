@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Parses the items of a Wikidata JSON dump keeping only the parts used to build the resources.
+ * <p>
+ * The terms in the other languages, the site link badges, the statements of the other properties, the non best
+ * rank statements, the qualifiers and the references are skipped token by token without being deserialized.
+ * All the subclass of (P279) statements are kept, whatever their rank, as the type hierarchy is built from them.
+ * Only the main snaks of the kept statements are deserialized with the WDTK data model mapper.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class TrimmedItemDocumentParser {
+
+    private final JsonFactory jsonFactory;
+    private final ObjectReader snakReader;
+    private final Set<String> languages;
+    private final Set<String> properties;
+
+    /**
+     * @param snakReader reader of the WDTK snaks
+     * @param languages  the languages of the terms to keep or null to keep all of them
+     * @param properties the ids of the properties whose statements should be kept
+     */
+    TrimmedItemDocumentParser(ObjectReader snakReader, Set<String> languages, Set<String> properties) {
+        this.jsonFactory = snakReader.getFactory();
+        this.snakReader = snakReader;
+        this.languages = languages;
+        this.properties = properties;
+    }
+
+    /**
+     * @return the trimmed item or null if the entity is not an item
+     */
+    ItemDocument parse(byte[] entity) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(entity)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "An entity should be a JSON object");
+            }
+            String type = null;
+            String id = null;
+            long revisionId = 0;
+            List<MonolingualTextValue> labels = new ArrayList<>();
+            List<MonolingualTextValue> descriptions = new ArrayList<>();
+            List<MonolingualTextValue> aliases = new ArrayList<>();
+            Map<String, SiteLink> siteLinks = new HashMap<>();
+            List<ParsedStatement> statements = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "type":
+                        type = parser.getText();
+                        if (!type.equals("item")) {
+                            return null;
+                        }
+                        break;
+                    case "id":
+                        id = parser.getText();
+                        break;
+                    case "lastrevid":
+                        revisionId = parser.getLongValue();
+                        break;
+                    case "labels":
+                        readTerms(parser, token, labels, false);
+                        break;
+                    case "descriptions":
+                        readTerms(parser, token, descriptions, false);
+                        break;
+                    case "aliases":
+                        readTerms(parser, token, aliases, true);
+                        break;
+                    case "sitelinks":
+                        readSiteLinks(parser, token, siteLinks);
+                        break;
+                    case "claims":
+                        readClaims(parser, token, statements);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (!"item".equals(type) || id == null) {
+                return null;
+            }
+
+            ItemIdValue itemId = Datamodel.makeWikidataItemIdValue(id);
+            Map<String, List<Statement>> statementsByProperty = new LinkedHashMap<>();
+            for (ParsedStatement statement : statements) {
+                statementsByProperty.computeIfAbsent(statement.property, property -> new ArrayList<>()).add(
+                        Datamodel.makeStatement(itemId, statement.mainSnak, Collections.emptyList(), Collections.emptyList(), statement.rank, statement.id)
+                );
+            }
+            List<StatementGroup> statementGroups = new ArrayList<>(statementsByProperty.size());
+            for (List<Statement> group : statementsByProperty.values()) {
+                statementGroups.add(Datamodel.makeStatementGroup(group));
+            }
+            return Datamodel.makeItemDocument(itemId, labels, descriptions, aliases, statementGroups, siteLinks, revisionId);
+        }
+    }
+
+    private void readTerms(JsonParser parser, JsonToken token, List<MonolingualTextValue> terms, boolean isMultiValued) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren(); //Empty terms are serialized as empty arrays
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String language = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (languages != null && !languages.contains(language)) {
+                parser.skipChildren();
+            } else if (isMultiValued && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readTerm(parser, terms);
+                }
+            } else if (value == JsonToken.START_OBJECT) {
+                readTerm(parser, terms);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readTerm(JsonParser parser, List<MonolingualTextValue> terms) throws IOException {
+        String language = null;
+        String text = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("language")) {
+                language = parser.getText();
+            } else if (field.equals("value")) {
+                text = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (language != null && text != null) {
+            terms.add(Datamodel.makeMonolingualTextValue(text, language));
+        }
+    }
+
+    private void readSiteLinks(JsonParser parser, JsonToken token, Map<String, SiteLink> siteLinks) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String site = null;
+            String title = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (field.equals("site")) {
+                    site = parser.getText();
+                } else if (field.equals("title")) {
+                    title = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (site != null && title != null) {
+                siteLinks.put(site, Datamodel.makeSiteLink(title, site));
+            }
+        }
+    }
+
+    private void readClaims(JsonParser parser, JsonToken token, List<ParsedStatement> statements) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String property = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_ARRAY || !properties.contains(property)) {
+                parser.skipChildren();
+                continue;
+            }
+            boolean keepAllRanks = property.equals(WikidataTypeHierarchy.SUBCLASS_OF_ID);
+            List<ParsedStatement> preferred = new ArrayList<>();
+            List<ParsedStatement> normals = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                ParsedStatement statement = readStatement(parser, property);
+                if (statement.mainSnak == null) {
+                    continue;
+                }
+                if (keepAllRanks) {
+                    statements.add(statement);
+                } else if (statement.rank == StatementRank.PREFERRED) {
+                    preferred.add(statement);
+                } else if (statement.rank == StatementRank.NORMAL) {
+                    normals.add(statement);
+                }
+            }
+            statements.addAll(preferred.isEmpty() ? normals : preferred);
+        }
+    }
+
+    private ParsedStatement readStatement(JsonParser parser, String property) throws IOException {
+        ParsedStatement statement = new ParsedStatement(property);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "mainsnak":
+                    statement.mainSnak = snakReader.readValue(parser);
+                    break;
+                case "rank":
+                    statement.rank = readRank(parser.getText());
+                    break;
+                case "id":
+                    statement.id = parser.getText();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return statement;
+    }
+
+    private static StatementRank readRank(String rank) {
+        switch (rank) {
+            case "preferred":
+                return StatementRank.PREFERRED;
+            case "deprecated":
+                return StatementRank.DEPRECATED;
+            default:
+                return StatementRank.NORMAL;
+        }
+    }
+
+    private static class ParsedStatement {
+        private final String property;
+        private Snak mainSnak;
+        private StatementRank rank = StatementRank.NORMAL;
+        private String id = "";
+
+        private ParsedStatement(String property) {
+            this.property = property;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
+
+import java.util.*;
+
+/**
+ * Compiled version of the class hierarchy that tells for each class which of a fixed list of target classes are
+ * among its super classes (the class itself included).
+ * <p>
+ * Classes are identified by their Q-number. The subclass relations are stored as a compressed sparse rows graph
+ * from which the descendants of each target are marked. Classes with the same set of reachable targets share the
+ * same signature so a lookup is a binary search followed by an array access.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+public class TypeClosureTable {
+
+    private static final int NO_SIGNATURE = 0;
+
+    private final List<ItemIdValue> targets;
+    private final int[] classNumbers;
+    private final int[] classSignatures;
+    private final List<List<ItemIdValue>> signatureTargets = new ArrayList<>();
+
+    public TypeClosureTable(WikidataTypeHierarchy typeHierarchy, Collection<ItemIdValue> targets) {
+        this.targets = new ArrayList<>(targets);
+
+        //Edges from super class to class
+        IntList edgeSources = new IntList();
+        IntList edgeTargets = new IntList();
+        typeHierarchy.forEachSuperClasses((item, parents) -> {
+            int itemNumber = parseNumber(item);
+            for (String parent : parents) {
+                int parentNumber = parseNumber(parent);
+                if (itemNumber >= 0 && parentNumber >= 0) {
+                    edgeSources.add(parentNumber);
+                    edgeTargets.add(itemNumber);
+                }
+            }
+        });
+
+        IntList allNumbers = new IntList();
+        allNumbers.addAll(edgeSources);
+        allNumbers.addAll(edgeTargets);
+        for (ItemIdValue target : this.targets) {
+            allNumbers.add(parseNumber(target.getId()));
+        }
+        classNumbers = allNumbers.toSortedUniqueArray();
+
+        int[] offsets = new int[classNumbers.length + 1];
+        for (int i = 0; i < edgeSources.size(); i++) {
+            offsets[indexOf(edgeSources.get(i)) + 1]++;
+        }
+        for (int i = 0; i < classNumbers.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] subClasses = new int[edgeSources.size()];
+        int[] fill = Arrays.copyOf(offsets, classNumbers.length);
+        for (int i = 0; i < edgeSources.size(); i++) {
+            subClasses[fill[indexOf(edgeSources.get(i))]++] = indexOf(edgeTargets.get(i));
+        }
+
+        //Marks the descendants of each target
+        int words = (this.targets.size() + 63) / 64;
+        long[] reachedTargets = new long[classNumbers.length * words];
+        int[] stack = new int[classNumbers.length];
+        int[] visitedBy = new int[classNumbers.length];
+        for (int t = 0; t < this.targets.size(); t++) {
+            int root = indexOf(parseNumber(this.targets.get(t).getId()));
+            int stackSize = 0;
+            stack[stackSize++] = root;
+            visitedBy[root] = t + 1;
+            while (stackSize > 0) {
+                int node = stack[--stackSize];
+                reachedTargets[node * words + t / 64] |= 1L << (t % 64);
+                for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                    if (visitedBy[subClasses[i]] != t + 1) {
+                        visitedBy[subClasses[i]] = t + 1;
+                        stack[stackSize++] = subClasses[i];
+                    }
+                }
+            }
+        }
+
+        classSignatures = new int[classNumbers.length];
+        signatureTargets.add(Collections.emptyList());
+        Map<BitSet, Integer> signatures = new HashMap<>();
+        for (int node = 0; node < classNumbers.length; node++) {
+            BitSet reached = BitSet.valueOf(Arrays.copyOfRange(reachedTargets, node * words, (node + 1) * words));
+            if (!reached.isEmpty()) {
+                classSignatures[node] = signatures.computeIfAbsent(reached, this::addSignature);
+            }
+        }
+    }
+
+    private int addSignature(BitSet reached) {
+        List<ItemIdValue> reachedTargets = new ArrayList<>();
+        reached.stream().forEach(t -> reachedTargets.add(targets.get(t)));
+        signatureTargets.add(Collections.unmodifiableList(reachedTargets));
+        return signatureTargets.size() - 1;
+    }
+
+    private static int parseNumber(String itemId) {
+        if (itemId.length() < 2 || itemId.charAt(0) != 'Q') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(itemId, 1, itemId.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private int indexOf(int classNumber) {
+        return Arrays.binarySearch(classNumbers, classNumber);
+    }
+
+    /**
+     * @return the number of distinct sets of reachable targets, signatures are between 0 and this number excluded
+     */
+    public int getSignatureCount() {
+        return signatureTargets.size();
+    }
+
+    /**
+     * @return the signature of the set of targets that are super classes of the given class, 0 if there are none
+     */
+    public int getSignature(ItemIdValue itemId) {
+        int classNumber = parseNumber(itemId.getId());
+        if (classNumber < 0) {
+            return NO_SIGNATURE;
+        }
+        int index = indexOf(classNumber);
+        return (index < 0) ? NO_SIGNATURE : classSignatures[index];
+    }
+
+    public List<ItemIdValue> getTargets(int signature) {
+        return signatureTargets.get(signature);
+    }
+
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toSortedUniqueArray() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, unique);
+        }
+    }
+}
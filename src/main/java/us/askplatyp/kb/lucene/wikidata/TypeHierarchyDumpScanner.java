@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Extracts the subclass of (P279) relations from a Wikidata JSON dump.
+ * <p>
+ * The calling thread splits the dump into entities that are parsed by the worker threads.
+ * The parsing is done with a streaming parser that skips everything except the P279 main values
+ * so no {@link org.wikidata.wdtk.datamodel.interfaces.ItemDocument} is built.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class TypeHierarchyDumpScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TypeHierarchyDumpScanner.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int BATCH_SIZE = 1024;
+    private static final List<byte[]> STOP = Collections.emptyList();
+
+    private final int threads;
+
+    TypeHierarchyDumpScanner(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return the direct super classes ids separated by spaces for each item having some
+     */
+    Map<String, String> scan(InputStream inputStream) throws IOException {
+        Map<String, String> hierarchy = new ConcurrentHashMap<>();
+        BlockingQueue<List<byte[]>> queue = new ArrayBlockingQueue<>(4 * threads);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> work(queue, hierarchy), "type-hierarchy-scanner-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        try {
+            JsonDumpSplitter splitter = new JsonDumpSplitter(inputStream);
+            List<byte[]> batch = new ArrayList<>(BATCH_SIZE);
+            for (byte[] entity = splitter.next(); entity != null; entity = splitter.next()) {
+                batch.add(entity);
+                if (batch.size() == BATCH_SIZE) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            queue.put(batch);
+            for (int i = 0; i < threads; i++) {
+                queue.put(STOP);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning the dump", e);
+        } finally {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+        return hierarchy;
+    }
+
+    private static void work(BlockingQueue<List<byte[]>> queue, Map<String, String> hierarchy) {
+        try {
+            for (List<byte[]> batch = queue.take(); batch != STOP; batch = queue.take()) {
+                for (byte[] entity : batch) {
+                    try (JsonParser parser = JSON_FACTORY.createParser(entity)) {
+                        readEntity(parser, hierarchy);
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.warn("Not able to parse an entity of the dump: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void readEntity(JsonParser parser, Map<String, String> hierarchy) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return;
+        }
+        String id = null;
+        List<String> parents = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("id")) {
+                id = parser.getText();
+            } else if (field.equals("claims") && value == JsonToken.START_OBJECT) {
+                readClaims(parser, parents);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (id != null && id.startsWith("Q") && !parents.isEmpty()) {
+            hierarchy.put(id, String.join(" ", parents));
+        }
+    }
+
+    private static void readClaims(JsonParser parser, List<String> parents) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String property = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && property.equals("P279")) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readObject(parser, "mainsnak", () -> readObject(parser, "datavalue", () -> readObject(parser, "value", () -> {
+                        String parent = readItemId(parser);
+                        if (parent != null) {
+                            parents.add(parent);
+                        }
+                    })));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Reads the current object and calls the reader on the value of the given field if it is an object
+     */
+    private static void readObject(JsonParser parser, String field, IOReader reader) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String currentField = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && currentField.equals(field)) {
+                reader.read();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Old dumps only provide the numeric id of the item values
+     */
+    private static String readItemId(JsonParser parser) throws IOException {
+        String id = null;
+        String numericId = null;
+        String entityType = "item";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = parser.getText();
+                    break;
+                case "numeric-id":
+                    numericId = parser.getText();
+                    break;
+                case "entity-type":
+                    entityType = parser.getText();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (!entityType.equals("item")) {
+            return null;
+        }
+        return (id != null) ? id : (numericId != null) ? "Q" + numericId : null;
+    }
+
+    @FunctionalInterface
+    private interface IOReader {
+        void read() throws IOException;
+    }
+}
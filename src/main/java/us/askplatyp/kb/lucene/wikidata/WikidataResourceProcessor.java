@@ -67,24 +67,46 @@ public class WikidataResourceProcessor implements EntityDocumentProcessor {
     private Sites sites;
     private TypeMapper typeMapper;
     private MapperRegistry mapperRegistry;
+    private volatile boolean typeResolutionDeferred = false;
 
     public WikidataResourceProcessor(StorageLoader loader, Sites sites, WikidataTypeHierarchy typeHierarchy) {
         this.loader = loader;
         this.sites = sites;
         this.typeMapper = new TypeMapper(typeHierarchy);
-        this.mapperRegistry = new MapperRegistry(typeHierarchy);
+        this.mapperRegistry = new MapperRegistry(typeMapper);
+    }
+
+    /**
+     * When the type resolution is deferred the items are indexed with their raw P31 values instead of their types
+     * and the filtered items are kept. It allows to load a dump while its type hierarchy is not known yet.
+     * The types should then be resolved with {@link us.askplatyp.kb.lucene.lucene.LuceneLoader#resolveRawTypes}.
+     */
+    public void setTypeResolutionDeferred(boolean typeResolutionDeferred) {
+        this.typeResolutionDeferred = typeResolutionDeferred;
+    }
+
+    /**
+     * @return the ids of the properties whose statements are used to build the resources
+     */
+    public Set<String> getUsedPropertyIds() {
+        Set<String> propertyIds = new HashSet<>();
+        mapperRegistry.getMappedProperties().forEach(property -> propertyIds.add(property.getId()));
+        propertyIds.add(P31.getId());
+        return propertyIds;
     }
 
     @Override
     public void processItemDocument(ItemDocument itemDocument) {
-        if (!isGoodItem(itemDocument)) {
+        boolean typeResolutionDeferred = this.typeResolutionDeferred;
+        if (!typeResolutionDeferred && !isGoodItem(itemDocument)) {
             return;
         }
 
         IndexableResource resource = new IndexableResource(itemDocument.getEntityId().getIri());
+        resource.setRevisionId(itemDocument.getRevisionId());
         addTermsToResource(itemDocument, resource);
         addSiteLinksToResource(itemDocument, resource);
-        addStatementsToResource(itemDocument, resource);
+        addStatementsToResource(itemDocument, resource, typeResolutionDeferred);
         addScoreToResource(itemDocument, resource);
         loader.addResource(resource);
     }
@@ -130,9 +152,16 @@ public class WikidataResourceProcessor implements EntityDocumentProcessor {
                 );
     }
 
-    private void addStatementsToResource(StatementDocument statementDocument, IndexableResource resource) {
-        statementDocument.getStatementGroups().forEach(group ->
-                getBestStatements(group).forEach(statement ->
+    private void addStatementsToResource(StatementDocument statementDocument, IndexableResource resource, boolean typeResolutionDeferred) {
+        if (typeResolutionDeferred) {
+            getBestStatements(statementDocument, P31).stream()
+                    .map(Statement::getValue)
+                    .filter(value -> value instanceof ItemIdValue)
+                    .forEach(value -> resource.addRawType(((ItemIdValue) value).getId()));
+        }
+        statementDocument.getStatementGroups().stream()
+                .filter(group -> !typeResolutionDeferred || !group.getProperty().equals(P31))
+                .forEach(group -> getBestStatements(group).forEach(statement ->
                         mapperRegistry.getMapperForProperty(statement.getClaim().getMainSnak().getPropertyId()).ifPresent(mapper -> {
                             try {
                                 mapper.mapStatement(statement).forEach(resource::addClaim);
@@ -140,8 +169,7 @@ public class WikidataResourceProcessor implements EntityDocumentProcessor {
                                 LOGGER.warn(e.getMessage(), e);
                             }
                         })
-                )
-        );
+                ));
     }
 
     private List<Statement> getBestStatements(StatementDocument statementDocument, PropertyIdValue property) {
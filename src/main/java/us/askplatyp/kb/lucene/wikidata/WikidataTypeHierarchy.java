@@ -20,14 +20,24 @@ package us.askplatyp.kb.lucene.wikidata;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.interfaces.*;
+import org.wikidata.wdtk.dumpfiles.MwDumpFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -35,13 +45,28 @@ import java.util.stream.Stream;
  * @author Thomas Pellissier Tanon
  */
 public class WikidataTypeHierarchy implements AutoCloseable {
+    /**
+     * The subclass of property
+     */
+    public static final String SUBCLASS_OF_ID = "P279";
+    private static final Logger LOGGER = LoggerFactory.getLogger(WikidataTypeHierarchy.class);
+    private static final String TYPE_HIERARCHY_NAME = "wd-type-hierachy";
+    private static final String DUMP_DATE_STAMP_NAME = "wd-type-hierachy-dump";
+
+    private final Path file;
     private DB datatabase;
     private ConcurrentMap<String, String> typeHierarchy;
+    private AtomicLong version = new AtomicLong();
 
     public WikidataTypeHierarchy(Path file) {
+        this.file = file;
+        open();
+    }
+
+    private void open() {
         datatabase = DBMaker.fileDB(file.toFile()).transactionEnable().checksumHeaderBypass().fileMmapEnableIfSupported().make();
         typeHierarchy = datatabase
-                .hashMap("wd-type-hierachy", Serializer.STRING, Serializer.STRING)
+                .hashMap(TYPE_HIERARCHY_NAME, Serializer.STRING, Serializer.STRING)
                 .createOrOpen();
     }
 
@@ -55,11 +80,81 @@ public class WikidataTypeHierarchy implements AutoCloseable {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Calls the consumer with each class and its direct super classes ids
+     */
+    public void forEachSuperClasses(BiConsumer<String, String[]> consumer) {
+        typeHierarchy.forEach((item, parents) -> consumer.accept(item, parents.split(" ")));
+    }
+
+    /**
+     * @return a number that changes each time the hierarchy is modified
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Replaces the hierarchy with the one of the given JSON dump.
+     * Nothing is done if the hierarchy has already been built from this dump.
+     *
+     * @param threads number of threads decompressing and parsing the dump
+     */
+    public void loadFromDump(MwDumpFile dump, int threads) throws IOException {
+        if (dump.getDateStamp().equals(datatabase.atomicString(DUMP_DATE_STAMP_NAME).createOrOpen().get())) {
+            LOGGER.info("The type hierarchy has already been built from the dump of the " + dump.getDateStamp());
+            return;
+        }
+        LOGGER.info("Building the type hierarchy from the dump of the " + dump.getDateStamp());
+        Map<String, String> hierarchy;
+        try (InputStream inputStream = ParallelJsonDumpReader.openDumpStream(dump, threads)) {
+            hierarchy = new TypeHierarchyDumpScanner(threads).scan(inputStream);
+        }
+        replaceWith(hierarchy, dump.getDateStamp());
+        LOGGER.info("Type hierarchy built with " + hierarchy.size() + " classes");
+    }
+
+    /**
+     * The new hierarchy is written in one batch without write-ahead log in a new file that then replaces the current one
+     */
+    private void replaceWith(Map<String, String> hierarchy, String dumpDateStamp) throws IOException {
+        Path bulkFile = file.resolveSibling(file.getFileName() + ".bulk");
+        Files.deleteIfExists(bulkFile);
+        DB bulkDatabase = DBMaker.fileDB(bulkFile.toFile()).fileMmapEnableIfSupported().make();
+        try {
+            bulkDatabase.hashMap(TYPE_HIERARCHY_NAME, Serializer.STRING, Serializer.STRING).create().putAll(hierarchy);
+            bulkDatabase.atomicString(DUMP_DATE_STAMP_NAME).create().set(dumpDateStamp);
+        } finally {
+            bulkDatabase.close();
+        }
+
+        datatabase.close();
+        Files.move(bulkFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        open();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Records that the hierarchy contains the relations of the given JSON dump, for example after it has been
+     * filled by the update processor while loading the dump.
+     */
+    public void markAsLoadedFrom(MwDumpFile dump) {
+        datatabase.atomicString(DUMP_DATE_STAMP_NAME).createOrOpen().set(dump.getDateStamp());
+        datatabase.commit();
+    }
+
+    /**
+     * Persists the changes done by the update processor
+     */
+    public void commit() {
+        datatabase.commit();
+    }
+
     public EntityDocumentProcessor getUpdateProcessor() {
         return new EntityDocumentProcessor() {
             @Override
             public void processItemDocument(ItemDocument itemDocument) {
-                StatementGroup statementGroup = itemDocument.findStatementGroup("P279");
+                StatementGroup statementGroup = itemDocument.findStatementGroup(SUBCLASS_OF_ID);
                 if (statementGroup != null) {
                     String parents = statementGroup.getStatements().stream()
                             .map(Statement::getValue)
@@ -70,8 +165,8 @@ public class WikidataTypeHierarchy implements AutoCloseable {
                                     return Stream.empty();
                                 }
                             }).collect(Collectors.joining(" "));
-                    if (!parents.equals("")) {
-                        typeHierarchy.put(itemDocument.getEntityId().getId(), parents);
+                    if (!parents.equals("") && !parents.equals(typeHierarchy.put(itemDocument.getEntityId().getId(), parents))) {
+                        version.incrementAndGet();
                     }
                 }
             }
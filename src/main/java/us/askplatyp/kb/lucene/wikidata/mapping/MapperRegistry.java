@@ -20,11 +20,11 @@ package us.askplatyp.kb.lucene.wikidata.mapping;
 import com.google.common.collect.ImmutableMap;
 import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
-import us.askplatyp.kb.lucene.wikidata.WikidataTypeHierarchy;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * @author Thomas Pellissier Tanon
@@ -33,11 +33,11 @@ public class MapperRegistry {
 
     private Map<PropertyIdValue, StatementMapper> mapperForProperty;
 
-    public MapperRegistry(WikidataTypeHierarchy typeHierarchy) {
-        this.mapperForProperty = buildMappers(typeHierarchy);
+    public MapperRegistry(TypeMapper typeMapper) {
+        this.mapperForProperty = buildMappers(typeMapper);
     }
 
-    private Map<PropertyIdValue, StatementMapper> buildMappers(WikidataTypeHierarchy typeHierarchy) {
+    private Map<PropertyIdValue, StatementMapper> buildMappers(TypeMapper typeMapper) {
         Map<PropertyIdValue, StatementMapper> mapperForProperty = new HashMap<>();
         //TODO: IMDB, LinkedIn, Myspace, Pinterest, Tumblr...
         mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P19"), new ItemIdStatementMapper("birthPlace"));
@@ -52,7 +52,7 @@ public class MapperRegistry {
         mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P25"), new ItemIdStatementMapper("parent"));
         mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P26"), new ItemIdStatementMapper("spouse"));
         mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P27"), new ItemIdStatementMapper("nationality"));
-        mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P31"), new TypeMapper(typeHierarchy));
+        mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P31"), typeMapper);
         mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P40"), new ItemIdStatementMapper("children"));
         mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P50"), new ItemIdStatementMapper("author"));
         mapperForProperty.put(Datamodel.makeWikidataPropertyIdValue("P57"), new ItemIdStatementMapper("director"));
@@ -174,4 +174,8 @@ public class MapperRegistry {
     public Optional<StatementMapper> getMapperForProperty(PropertyIdValue propertyId) {
         return Optional.ofNullable(mapperForProperty.get(propertyId));
     }
+
+    public Set<PropertyIdValue> getMappedProperties() {
+        return mapperForProperty.keySet();
+    }
 }
@@ -22,9 +22,13 @@ import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
 import us.askplatyp.kb.lucene.model.Claim;
 import us.askplatyp.kb.lucene.model.value.ResourceValue;
+import us.askplatyp.kb.lucene.wikidata.TypeClosureTable;
 import us.askplatyp.kb.lucene.wikidata.WikidataTypeHierarchy;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -150,10 +154,19 @@ public class TypeMapper implements StatementMainItemIdValueMapper {
         SCHEMA_TYPES.put(Datamodel.makeWikidataItemIdValue("Q27108230"), Arrays.asList("Place", "CivicStructure", "Organization", "LocalBusiness", "LodgingBusiness", "Campground"));
     }
 
-    private WikidataTypeHierarchy typeHierarchy;
+    private static final ExecutorService REBUILD_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "type-table-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final WikidataTypeHierarchy typeHierarchy;
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private volatile TypeTable typeTable;
 
     public TypeMapper(WikidataTypeHierarchy typeHierarchy) {
         this.typeHierarchy = typeHierarchy;
+        this.typeTable = new TypeTable(typeHierarchy);
     }
 
     @Override
@@ -163,31 +176,122 @@ public class TypeMapper implements StatementMainItemIdValueMapper {
     }
 
     private Set<String> mapClass(ItemIdValue itemId) {
-        return getAllSuperClasses(itemId).stream()
-                .flatMap(itemIdV -> SCHEMA_TYPES.getOrDefault(itemIdV, Collections.emptyList()).stream())
-                .collect(Collectors.toSet());
+        TypeTable table = getTypeTable();
+        if (isUpToDate(table)) {
+            return table.schemaTypes.get(table.closure.getSignature(itemId));
+        }
+        return getSchemaTypes(getTargetSuperClasses(itemId));
     }
 
     public boolean isFilteredClass(ItemIdValue itemId) {
-        return getAllSuperClasses(itemId).stream()
-                .anyMatch(FILTERED_TYPES::contains);
+        TypeTable table = getTypeTable();
+        if (isUpToDate(table)) {
+            return table.filtered[table.closure.getSignature(itemId)];
+        }
+        return isFiltered(getTargetSuperClasses(itemId));
+    }
+
+    /**
+     * @param classIds the ids of the classes of an item
+     * @return the types of the item or an empty value if it should not be indexed
+     */
+    public Optional<Set<String>> resolveTypes(Collection<String> classIds) {
+        TypeTable table = getTypeTable();
+        boolean isUpToDate = isUpToDate(table);
+        Set<String> types = new HashSet<>();
+        for (String classId : classIds) {
+            ItemIdValue itemId = Datamodel.makeWikidataItemIdValue(classId);
+            if (isUpToDate) {
+                int signature = table.closure.getSignature(itemId);
+                if (table.filtered[signature]) {
+                    return Optional.empty();
+                }
+                types.addAll(table.schemaTypes.get(signature));
+            } else {
+                List<ItemIdValue> superClasses = getTargetSuperClasses(itemId);
+                if (isFiltered(superClasses)) {
+                    return Optional.empty();
+                }
+                types.addAll(getSchemaTypes(superClasses));
+            }
+        }
+        return Optional.of(types);
+    }
+
+    /**
+     * The table is rebuilt in background as soon as the hierarchy has changed.
+     * Until the new table is available the lookups are done on the hierarchy itself.
+     */
+    private TypeTable getTypeTable() {
+        TypeTable table = typeTable;
+        if (!isUpToDate(table) && rebuilding.compareAndSet(false, true)) {
+            REBUILD_EXECUTOR.execute(() -> {
+                try {
+                    typeTable = new TypeTable(typeHierarchy);
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        }
+        return table;
     }
 
-    private Set<ItemIdValue> getAllSuperClasses(ItemIdValue itemId) {
-        Set<ItemIdValue> superClasses = new HashSet<>();
-        superClasses.add(itemId);
-
-        Stack<ItemIdValue> toGet = new Stack<>();
-        toGet.add(itemId);
-        while (!toGet.empty()) {
-            for (ItemIdValue superClass : typeHierarchy.getSuperClasses(toGet.pop())) {
-                if (!superClasses.contains(superClass)) {
-                    superClasses.add(superClass);
-                    toGet.add(superClass);
+    boolean isTypeTableUpToDate() {
+        return isUpToDate(typeTable);
+    }
+
+    private boolean isUpToDate(TypeTable table) {
+        return table.version == typeHierarchy.getVersion();
+    }
+
+    /**
+     * @return the schema and filtered types that are super classes of the given class (the class itself included)
+     */
+    private List<ItemIdValue> getTargetSuperClasses(ItemIdValue itemId) {
+        List<ItemIdValue> targets = new ArrayList<>();
+        Set<ItemIdValue> visited = new HashSet<>();
+        Deque<ItemIdValue> toVisit = new ArrayDeque<>();
+        visited.add(itemId);
+        toVisit.add(itemId);
+        while (!toVisit.isEmpty()) {
+            ItemIdValue current = toVisit.poll();
+            if (SCHEMA_TYPES.containsKey(current) || FILTERED_TYPES.contains(current)) {
+                targets.add(current);
+            }
+            for (ItemIdValue superClass : typeHierarchy.getSuperClasses(current)) {
+                if (visited.add(superClass)) {
+                    toVisit.add(superClass);
                 }
             }
         }
+        return targets;
+    }
+
+    private static Set<String> getSchemaTypes(List<ItemIdValue> superClasses) {
+        return superClasses.stream()
+                .flatMap(superClass -> SCHEMA_TYPES.getOrDefault(superClass, Collections.emptyList()).stream())
+                .collect(Collectors.toSet());
+    }
+
+    private static boolean isFiltered(List<ItemIdValue> superClasses) {
+        return superClasses.stream().anyMatch(FILTERED_TYPES::contains);
+    }
 
-        return superClasses;
+    private static final class TypeTable {
+        private final long version;
+        private final TypeClosureTable closure;
+        private final List<Set<String>> schemaTypes = new ArrayList<>();
+        private final boolean[] filtered;
+
+        private TypeTable(WikidataTypeHierarchy typeHierarchy) {
+            version = typeHierarchy.getVersion();
+            closure = new TypeClosureTable(typeHierarchy, Sets.union(SCHEMA_TYPES.keySet(), FILTERED_TYPES));
+            filtered = new boolean[closure.getSignatureCount()];
+            for (int signature = 0; signature < closure.getSignatureCount(); signature++) {
+                List<ItemIdValue> superClasses = closure.getTargets(signature);
+                schemaTypes.add(getSchemaTypes(superClasses));
+                filtered[signature] = isFiltered(superClasses);
+            }
+        }
     }
 }
@@ -17,47 +17,64 @@
 
 package us.askplatyp.kb.lucene.wikimedia.rest;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.geojson.GeoJsonReader;
-import org.apache.commons.io.IOUtils;
+import us.askplatyp.kb.lucene.Configuration;
 
 import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.net.URL;
-import java.nio.charset.Charset;
+import java.net.URLConnection;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
+ * Concurrent requests for shapes missing from the cache are gathered during a short window and sent to
+ * Kartographer as a single request with multiple ids.
+ *
  * @author Thomas Pellissier Tanon
  */
 public class KartographerAPI {
 
-    private static final Pattern FEATURE_COLLECTION_PATTERN = Pattern.compile("\\{.*\"features\":\\[\\{.*\"geometry\":(.*)\\}\\].*\\}");
-    private static final String EMPTY_FEATURE_COLLECTION = "{\"type\":\"FeatureCollection\",\"features\":[]}";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
     private static final GeoJsonReader GEO_JSON_READER = new GeoJsonReader(GEOMETRY_FACTORY);
     private static final Geometry EMPTY_GEOMETRY = GEOMETRY_FACTORY.createGeometryCollection(new Geometry[]{});
+    private static final int TIMEOUT = 10000;
+    private static final int MAX_BATCH_SIZE = 50;
     private static final KartographerAPI INSTANCE = new KartographerAPI();
-    private LoadingCache<String, Geometry> shapeCache = CacheBuilder.newBuilder()
-            .maximumSize(16384) //TODO: configure?
-            .expireAfterWrite(7, TimeUnit.DAYS)
-            .build(new CacheLoader<String, Geometry>() {
-                @Override
-                public Geometry load(String itemId) throws IOException, ParseException {
-                    return requestShapeForItemId(itemId);
-                }
-            });
+    private final TwoTierCache<Geometry> shapeCache = new TwoTierCache<>(
+            "kartographer-shapes",
+            KartographerAPI::parseGeometry,
+            Geometry::isEmpty,
+            Configuration.getInstance().getShapeCacheTimeToLive(),
+            Configuration.getInstance().getNegativeCacheTimeToLive()
+    );
+    private final URI endpoint;
+    private final long batchWindow;
+    private Map<String, CompletableFuture<String>> pendingBatch = null;
 
     private KartographerAPI() {
+        this(URI.create("https://maps.wikimedia.org/"));
+    }
+
+    public KartographerAPI(URI endpoint) {
+        this(endpoint, Configuration.getInstance().getKartographerBatchWindow());
+    }
+
+    /**
+     * @param batchWindow time in milliseconds to wait for other requests to batch with
+     */
+    KartographerAPI(URI endpoint, long batchWindow) {
+        this.endpoint = endpoint;
+        this.batchWindow = batchWindow;
     }
 
     public static KartographerAPI getInstance() {
@@ -70,41 +87,119 @@ public class KartographerAPI {
         }
 
         String itemId = itemURI.replace("http://www.wikidata.org/entity/", "");
+        return shapeCache.get(itemId, this::requestShapeForItemId);
+    }
+
+    public Map<String, Long> getCacheStatistics() {
+        return shapeCache.getStatistics();
+    }
+
+    private static Geometry parseGeometry(String geoJSON) throws IOException {
+        if (geoJSON.isEmpty()) {
+            return EMPTY_GEOMETRY;
+        }
         try {
-            return shapeCache.get(itemId);
-        } catch (ExecutionException e) {
+            return GEO_JSON_READER.read(geoJSON);
+        } catch (ParseException e) {
             throw new IOException(e);
         }
     }
 
-    private Geometry requestShapeForItemId(String itemId) throws IOException, ParseException {
-        URL targetURLShape = UriBuilder.fromUri("https://maps.wikimedia.org/geoshape?getgeojson=1")
-                .queryParam("ids", itemId)
-                .build().toURL();
-        Geometry geoShape = geoGeoJSONRequest(targetURLShape);
-        if (!geoShape.isEmpty()) {
-            return geoShape;
+    /**
+     * The first caller of a batch waits for the batch window then does the request for all the batched items.
+     *
+     * @return the GeoJSON geometry of the item or an empty string if the item has no shape
+     */
+    private String requestShapeForItemId(String itemId) throws IOException {
+        Map<String, CompletableFuture<String>> batch;
+        CompletableFuture<String> result;
+        boolean leader;
+        synchronized (this) {
+            leader = pendingBatch == null;
+            if (leader) {
+                pendingBatch = new LinkedHashMap<>();
+            }
+            batch = pendingBatch;
+            result = batch.computeIfAbsent(itemId, key -> new CompletableFuture<>());
+            if (batch.size() >= MAX_BATCH_SIZE) {
+                pendingBatch = null;
+                notifyAll();
+            }
         }
 
-        URL targetURLLine = UriBuilder.fromUri("https://maps.wikimedia.org/geoline?getgeojson=1")
-                .queryParam("ids", itemId)
-                .build().toURL();
-        return geoGeoJSONRequest(targetURLLine);
+        if (leader) {
+            closeBatch(batch);
+            executeBatch(batch);
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private synchronized void closeBatch(Map<String, CompletableFuture<String>> batch) {
+        long deadline = System.currentTimeMillis() + batchWindow;
+        try {
+            for (long remaining = batchWindow; pendingBatch == batch && remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (pendingBatch == batch) {
+                pendingBatch = null;
+            }
+        }
     }
 
-    private Geometry geoGeoJSONRequest(URL targetURL) throws IOException, ParseException {
-        try (InputStream inputStream = targetURL.openStream()) {
-            String geoJSON = IOUtils.toString(inputStream, Charset.defaultCharset());
-            if (geoJSON.equals(EMPTY_FEATURE_COLLECTION)) {
-                return EMPTY_GEOMETRY;
+    private void executeBatch(Map<String, CompletableFuture<String>> batch) {
+        try {
+            Map<String, String> shapes = requestGeoJSON("geoshape", batch.keySet());
+            Set<String> withoutShape = new HashSet<>(batch.keySet());
+            withoutShape.removeAll(shapes.keySet());
+            if (!withoutShape.isEmpty()) {
+                shapes.putAll(requestGeoJSON("geoline", withoutShape));
             }
+            batch.forEach((itemId, future) -> future.complete(shapes.getOrDefault(itemId, "")));
+        } catch (IOException | RuntimeException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
 
-            Matcher matcher = FEATURE_COLLECTION_PATTERN.matcher(geoJSON);
-            if (matcher.matches()) {
-                return GEO_JSON_READER.read(matcher.group(1));
-            } else {
-                throw new ParseException("The GeoJSON root should be a FeatureCollection");
+    /**
+     * @return the GeoJSON geometries of the items that have one
+     */
+    private Map<String, String> requestGeoJSON(String service, Set<String> itemIds) throws IOException {
+        URL targetURL = UriBuilder.fromUri(endpoint).path(service).queryParam("getgeojson", 1)
+                .queryParam("ids", String.join(",", itemIds))
+                .build().toURL();
+        URLConnection connection = targetURL.openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        JsonNode root;
+        try (InputStream inputStream = connection.getInputStream()) {
+            root = MAPPER.readTree(inputStream);
+        }
+        if (root == null || !root.path("features").isArray()) {
+            throw new IOException("The GeoJSON root should be a FeatureCollection");
+        }
+
+        Map<String, String> geometries = new HashMap<>();
+        for (JsonNode feature : root.get("features")) {
+            JsonNode geometry = feature.get("geometry");
+            if (geometry == null || geometry.isNull()) {
+                continue;
+            }
+            String itemId = feature.has("id") ? feature.get("id").asText() : (itemIds.size() == 1 ? itemIds.iterator().next() : null);
+            if (itemId != null && itemIds.contains(itemId)) {
+                geometries.putIfAbsent(itemId, MAPPER.writeValueAsString(geometry));
             }
         }
+        return geometries;
     }
 }
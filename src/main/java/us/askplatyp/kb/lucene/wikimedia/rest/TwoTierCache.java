@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikimedia.rest;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import us.askplatyp.kb.lucene.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Cache of the responses of a remote API with an in-heap tier and an optional persistent tier.
+ * <p>
+ * Values stay fresh during their time to live. After it they are still served during the stale time while
+ * being refreshed in background. Values matching the negative predicate (i.e. empty responses) use their own
+ * time to live.
+ * <p>
+ * The persistent tier is a MapDB file shared by all caches and enabled by the us.askplatyp.kb.lucene.cache.file
+ * configuration variable. It stores the raw responses so they could be decoded again after a restart.
+ * The expired responses are regularly removed from it.
+ *
+ * @author Thomas Pellissier Tanon
+ */
+class TwoTierCache<V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TwoTierCache.class);
+    private static DB DATABASE;
+    private static boolean DATABASE_INITIALIZED = false;
+    private static final long SWEEP_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Decoder<V> decoder;
+    private final Predicate<V> isNegative;
+    private final long timeToLive;
+    private final long negativeTimeToLive;
+    private final long staleTime;
+    private final Cache<String, Entry<V>> heapCache;
+    private final ConcurrentMap<String, String> persistentCache;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final LongSupplier clock;
+    private final Executor refreshExecutor;
+    private volatile long lastSweep;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder heapHits = new LongAdder();
+    private final LongAdder persistentHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LongAdder sweptEntries = new LongAdder();
+
+    /**
+     * @param name               name of the persistent map used to store the values
+     * @param timeToLive         time to live in seconds
+     * @param negativeTimeToLive time to live in seconds of the values matching isNegative
+     */
+    TwoTierCache(String name, Decoder<V> decoder, Predicate<V> isNegative, long timeToLive, long negativeTimeToLive) {
+        this(decoder, isNegative, timeToLive, negativeTimeToLive,
+                Configuration.getInstance().getCacheStaleTime(), Configuration.getInstance().getCacheSize(),
+                getPersistentMap(name), System::currentTimeMillis, REFRESH_EXECUTOR);
+    }
+
+    /**
+     * @param clock           the current time in milliseconds
+     * @param refreshExecutor executor of the background refreshes and of the sweeps of the persistent tier
+     */
+    TwoTierCache(
+            Decoder<V> decoder, Predicate<V> isNegative, long timeToLive, long negativeTimeToLive, long staleTime,
+            int heapSize, ConcurrentMap<String, String> persistentCache, LongSupplier clock, Executor refreshExecutor
+    ) {
+        this.decoder = decoder;
+        this.isNegative = isNegative;
+        this.timeToLive = TimeUnit.SECONDS.toMillis(timeToLive);
+        this.negativeTimeToLive = TimeUnit.SECONDS.toMillis(negativeTimeToLive);
+        this.staleTime = TimeUnit.SECONDS.toMillis(staleTime);
+        this.heapCache = CacheBuilder.newBuilder()
+                .maximumSize(heapSize)
+                .expireAfterWrite(getMaxLifetime(), TimeUnit.MILLISECONDS)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return TimeUnit.MILLISECONDS.toNanos(clock.getAsLong());
+                    }
+                })
+                .build();
+        this.persistentCache = persistentCache;
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+        this.lastSweep = clock.getAsLong();
+    }
+
+    private long getMaxLifetime() {
+        return Math.max(timeToLive, negativeTimeToLive) + staleTime;
+    }
+
+    private static synchronized ConcurrentMap<String, String> getPersistentMap(String name) {
+        if (!DATABASE_INITIALIZED) {
+            DATABASE_INITIALIZED = true;
+            Configuration.getInstance().getCacheFile().ifPresent(file -> DATABASE = openDatabase(new File(file)));
+        }
+        if (DATABASE == null) {
+            return null;
+        }
+        return DATABASE.hashMap(name, Serializer.STRING, Serializer.STRING).createOrOpen();
+    }
+
+    private static DB openDatabase(File file) {
+        try {
+            return DBMaker.fileDB(file).fileMmapEnableIfSupported().closeOnJvmShutdown().make();
+        } catch (RuntimeException e) {
+            LOGGER.warn("The cache file " + file + " is not readable, creating a new one", e);
+            if (!file.delete()) {
+                LOGGER.error("Not able to delete the cache file " + file);
+                return null;
+            }
+            return DBMaker.fileDB(file).fileMmapEnableIfSupported().closeOnJvmShutdown().make();
+        }
+    }
+
+    V get(String key, Loader loader) throws IOException {
+        requests.increment();
+        long now = clock.getAsLong();
+        sweepIfNeeded(now);
+        Entry<V> entry = heapCache.getIfPresent(key);
+        if (entry != null && entry.isExpired(now)) {
+            // Conditional removal so that we do not drop a value another thread has just loaded
+            heapCache.asMap().remove(key, entry);
+        }
+        boolean[] loaded = {false};
+        try {
+            // Concurrent misses on the same key wait for a single load
+            entry = heapCache.get(key, () -> {
+                loaded[0] = true;
+                return load(key, loader);
+            });
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        if (!entry.isFresh(now)) {
+            staleHits.increment();
+            refresh(key, loader);
+        } else if (!loaded[0]) {
+            heapHits.increment();
+        }
+        return entry.value;
+    }
+
+    private Entry<V> load(String key, Loader loader) throws IOException {
+        if (persistentCache != null) {
+            String stored = persistentCache.get(key);
+            if (stored != null) {
+                int separator = stored.indexOf('|');
+                Entry<V> entry = buildEntry(stored.substring(separator + 1), Long.parseLong(stored.substring(0, separator)));
+                if (!entry.isExpired(clock.getAsLong())) {
+                    persistentHits.increment();
+                    return entry;
+                }
+            }
+        }
+        misses.increment();
+        return fetch(key, loader);
+    }
+
+    private Entry<V> fetch(String key, Loader loader) throws IOException {
+        long fetchTime = clock.getAsLong();
+        String raw = loader.load(key);
+        Entry<V> entry = buildEntry(raw, fetchTime);
+        if (persistentCache != null) {
+            persistentCache.put(key, fetchTime + "|" + raw);
+        }
+        return entry;
+    }
+
+    private void refresh(String key, Loader loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    heapCache.put(key, fetch(key, loader));
+                    refreshes.increment();
+                } catch (IOException | RuntimeException e) {
+                    refreshFailures.increment();
+                    LOGGER.warn("Refresh of " + key + " failed: " + e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private void sweepIfNeeded(long now) {
+        if (persistentCache == null || now - lastSweep < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweep = now;
+        try {
+            refreshExecutor.execute(this::sweep);
+        } catch (RejectedExecutionException e) {
+            // Done at the next interval
+        }
+    }
+
+    /**
+     * Removes from the persistent tier the values that are expired whatever their time to live
+     */
+    void sweep() {
+        long expirationTime = clock.getAsLong() - getMaxLifetime();
+        for (Map.Entry<String, String> stored : persistentCache.entrySet()) {
+            String value = stored.getValue();
+            if (Long.parseLong(value.substring(0, value.indexOf('|'))) <= expirationTime &&
+                    persistentCache.remove(stored.getKey(), value)) {
+                sweptEntries.increment();
+            }
+        }
+    }
+
+    private Entry<V> buildEntry(String raw, long fetchTime) throws IOException {
+        V value = decoder.decode(raw);
+        long freshUntil = fetchTime + (isNegative.test(value) ? negativeTimeToLive : timeToLive);
+        return new Entry<>(value, freshUntil, freshUntil + staleTime);
+    }
+
+    Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("requests", requests.sum());
+        statistics.put("heapHits", heapHits.sum());
+        statistics.put("persistentHits", persistentHits.sum());
+        statistics.put("misses", misses.sum());
+        statistics.put("staleHits", staleHits.sum());
+        statistics.put("refreshes", refreshes.sum());
+        statistics.put("refreshFailures", refreshFailures.sum());
+        statistics.put("sweptEntries", sweptEntries.sum());
+        statistics.put("heapSize", heapCache.size());
+        return statistics;
+    }
+
+    @FunctionalInterface
+    interface Decoder<V> {
+        V decode(String raw) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * @return the raw value to cache
+         */
+        String load(String key) throws IOException;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long freshUntil;
+        private final long expiresAt;
+
+        private Entry(V value, long freshUntil, long expiresAt) {
+            this.value = value;
+            this.freshUntil = freshUntil;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isFresh(long now) {
+            return now < freshUntil;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -18,17 +18,19 @@
 package us.askplatyp.kb.lucene.wikimedia.rest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import org.apache.commons.io.IOUtils;
+import us.askplatyp.kb.lucene.Configuration;
 import us.askplatyp.kb.lucene.wikimedia.rest.model.Summary;
 
 import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 /**
  * @author Thomas Pellissier Tanon
@@ -37,17 +39,25 @@ public class WikimediaREST {
 
     private static final WikimediaREST INSTANCE = new WikimediaREST();
     private static final ObjectMapper MAPPER = new ObjectMapper();
-    private LoadingCache<String, Summary> summaryCache = CacheBuilder.newBuilder()
-            .maximumSize(16384) //TODO: configure?
-            .expireAfterWrite(1, TimeUnit.DAYS)
-            .build(new CacheLoader<String, Summary>() {
-                @Override
-                public Summary load(String pageIRI) throws IOException {
-                    return buildSummary(pageIRI);
-                }
-            });
+    private static final int TIMEOUT = 10000;
+    private final TwoTierCache<Summary> summaryCache = new TwoTierCache<>(
+            "wikimedia-summaries",
+            raw -> MAPPER.readValue(raw, Summary.class),
+            summary -> false,
+            Configuration.getInstance().getSummaryCacheTimeToLive(),
+            Configuration.getInstance().getSummaryCacheTimeToLive()
+    );
+    private URI endpoint;
 
     private WikimediaREST() {
+        this(null);
+    }
+
+    /**
+     * @param endpoint base URI of the REST API to use or null to use the API of the wiki hosting each page
+     */
+    public WikimediaREST(URI endpoint) {
+        this.endpoint = endpoint;
     }
 
     public static WikimediaREST getInstance() {
@@ -55,21 +65,28 @@ public class WikimediaREST {
     }
 
     public Summary getSummary(String pageIRI) throws IOException {
-        try {
-            return summaryCache.get(pageIRI);
-        } catch (ExecutionException e) {
-            throw new IOException(e);
-        }
+        return summaryCache.get(pageIRI, this::requestSummary);
     }
 
-    private Summary buildSummary(String pageIRI) throws IOException {
-        return MAPPER.readValue(getURLForPageAction("summary", pageIRI).openStream(), Summary.class);
+    public Map<String, Long> getCacheStatistics() {
+        return summaryCache.getStatistics();
+    }
+
+    private String requestSummary(String pageIRI) throws IOException {
+        URLConnection connection = getURLForPageAction("summary", pageIRI).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        try (InputStream inputStream = connection.getInputStream()) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
     }
 
     private URL getURLForPageAction(String action, String pageIRI) throws MalformedURLException {
         URL pageURL = new URL(pageIRI);
-        return UriBuilder.fromUri("https://host/api/rest_v1/page/")
-                .host(pageURL.getHost())
+        UriBuilder builder = (endpoint == null)
+                ? UriBuilder.fromUri("https://host/api/rest_v1/page/").host(pageURL.getHost())
+                : UriBuilder.fromUri(endpoint).path("api/rest_v1/page/");
+        return builder
                 .segment(action, pageURL.getPath().replaceFirst("/wiki/", ""))
                 .queryParam("redirect", "false")
                 .build().toURL();
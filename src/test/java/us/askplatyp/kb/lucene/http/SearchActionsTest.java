@@ -34,6 +34,7 @@ import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class SearchActionsTest extends JerseyTest {
 
@@ -55,20 +56,22 @@ public class SearchActionsTest extends JerseyTest {
     public void testDefault() {
         Collection<EntitySearchResult<Entity>> result = target("/api/v1/search/simple").request().get(RESULT_TYPE);
         assertElementCount(result, 6);
+        //The entities with the same rank are ordered by IRI
+        assertIRIs(result, "wd:Q42", "wd:Q111", "wd:Q2108", "wd:Q222", "wd:Q90", "wd:Q91");
         assertEnglishIndividual(result.getElements().get(0).getResult());
-        assertEnglishSmallFoo(result.getElements().get(1).getResult());
-        assertEnglishDummy(result.getElements().get(2).getResult());
-
+        assertEnglishDummy(result.getElements().get(1).getResult());
+        assertEnglishSmallFoo(result.getElements().get(3).getResult());
     }
 
     @Test
     public void testTopTypeSearch() {
         Collection<EntitySearchResult<Entity>> result = target("/api/v1/search/simple").queryParam("type", "Thing").request().get(RESULT_TYPE);
         assertElementCount(result, 6);
+        //The entities with the same rank are ordered by IRI
+        assertIRIs(result, "wd:Q42", "wd:Q111", "wd:Q2108", "wd:Q222", "wd:Q90", "wd:Q91");
         assertEnglishIndividual(result.getElements().get(0).getResult());
-        assertEnglishSmallFoo(result.getElements().get(1).getResult());
-        assertEnglishDummy(result.getElements().get(2).getResult());
-
+        assertEnglishDummy(result.getElements().get(1).getResult());
+        assertEnglishSmallFoo(result.getElements().get(3).getResult());
     }
 
     @Test
@@ -130,6 +133,21 @@ public class SearchActionsTest extends JerseyTest {
         assertElementCount(result, 0);
     }
 
+    @Test
+    public void testAutocomplete() {
+        Collection<EntitySearchResult<Entity>> result = target("/api/v1/search/autocomplete").queryParam("q", "foo b").request().get(RESULT_TYPE);
+        assertElementCount(result, 2);
+        assertEnglishIndividual(result.getElements().get(0).getResult());
+        assertEnglishSmallFoo(result.getElements().get(1).getResult());
+    }
+
+    @Test
+    public void testAutocompleteWithType() {
+        Collection<EntitySearchResult<Entity>> result = target("/api/v1/search/autocomplete").queryParam("q", "Fo").queryParam("type", "Person").request().get(RESULT_TYPE);
+        assertElementCount(result, 1);
+        assertEnglishIndividual(result.getElements().get(0).getResult());
+    }
+
     @Test
     public void testUnsupportedContentType() {
         Response response = target("/api/v1/search/simple").queryParam("q", "Foo Bar").request(MediaType.APPLICATION_XML_TYPE).get();
@@ -137,10 +155,17 @@ public class SearchActionsTest extends JerseyTest {
     }
 
     private <T> void assertElementCount(Collection<T> collection, int count) {
-        Assert.assertEquals(count, collection.getTotalNumber());
+        Assert.assertEquals(Long.valueOf(count), collection.getTotalNumber());
         Assert.assertEquals(count, collection.getElements().size());
     }
 
+    private void assertIRIs(Collection<EntitySearchResult<Entity>> collection, String... IRIs) {
+        Assert.assertEquals(
+                Arrays.asList(IRIs),
+                collection.getElements().stream().map(element -> element.getResult().getIRI()).collect(Collectors.toList())
+        );
+    }
+
     private void assertEnglishIndividual(Entity result) {
         Assert.assertEquals(buildLanguageTaggedLiteral("Foo bar", "en"), result.getPropertyValue("name"));
         Assert.assertNull(result.getPropertyValue("description"));
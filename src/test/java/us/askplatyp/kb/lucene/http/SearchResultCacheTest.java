@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class SearchResultCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private String load() {
+        return "result" + loads.incrementAndGet();
+    }
+
+    @Test
+    public void testHit() {
+        SearchResultCache cache = new SearchResultCache(16);
+        Assert.assertEquals("result1", cache.get(1, Collections.singletonList("a"), this::load));
+        Assert.assertEquals("result1", cache.get(1, Collections.singletonList("a"), this::load));
+        Assert.assertEquals("result2", cache.get(1, Collections.singletonList("b"), this::load));
+
+        Assert.assertEquals(1, (long) cache.getStatistics().get("hits"));
+        Assert.assertEquals(2, (long) cache.getStatistics().get("misses"));
+    }
+
+    @Test
+    public void testInvalidationOnNewVersion() {
+        SearchResultCache cache = new SearchResultCache(16);
+        cache.get(1, Collections.singletonList("a"), this::load);
+        cache.get(2, Collections.singletonList("b"), this::load);
+
+        Assert.assertEquals(1, (long) cache.getStatistics().get("size"));
+        Assert.assertEquals(1, (long) cache.getStatistics().get("invalidations"));
+        Assert.assertEquals("result3", cache.get(3, Collections.singletonList("a"), this::load));
+    }
+
+    @Test
+    public void testInterleavedVersions() {
+        SearchResultCache cache = new SearchResultCache(16);
+        Assert.assertEquals("result1", cache.get(1, Collections.singletonList("a"), this::load));
+        Assert.assertEquals("result2", cache.get(2, Collections.singletonList("a"), this::load));
+
+        //The requests still reading the previous version are neither cached nor dropping the current entries
+        Assert.assertEquals("result3", cache.get(1, Collections.singletonList("a"), this::load));
+        Assert.assertEquals("result4", cache.get(1, Collections.singletonList("b"), this::load));
+        Assert.assertEquals("result2", cache.get(2, Collections.singletonList("a"), this::load));
+        Assert.assertEquals("result5", cache.get(1, Collections.singletonList("a"), this::load));
+        Assert.assertEquals("result2", cache.get(2, Collections.singletonList("a"), this::load));
+
+        Assert.assertEquals(1, (long) cache.getStatistics().get("invalidations"));
+        Assert.assertEquals(3, (long) cache.getStatistics().get("outdatedRequests"));
+        Assert.assertEquals(2, (long) cache.getStatistics().get("hits"));
+        Assert.assertEquals(1, (long) cache.getStatistics().get("size"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.jsonld;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import us.askplatyp.kb.lucene.model.Resource;
+import us.askplatyp.kb.lucene.model.value.Article;
+import us.askplatyp.kb.lucene.model.value.GeoShapeValue;
+import us.askplatyp.kb.lucene.model.value.StringValue;
+import us.askplatyp.kb.lucene.wikimedia.rest.KartographerAPI;
+import us.askplatyp.kb.lucene.wikimedia.rest.WikimediaREST;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class EntityEnricherTest {
+
+    private static final String SUMMARY = "{\"title\":\"Paris\",\"extract\":\"Paris est la capitale de la France.\"," +
+            "\"thumbnail\":{\"source\":\"http://example.com/paris.jpg\",\"width\":320,\"height\":240},\"lang\":\"fr\",\"dir\":\"ltr\"}";
+    private static final String SHAPE = "{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"id\":\"Q90\"," +
+            "\"properties\":{},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[2.2,48.8],[2.4,48.8],[2.4,48.9],[2.2,48.8]]]}}]}";
+
+    private HttpServer server;
+    private volatile long shapeDelay = 0;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/rest_v1/page/summary/", exchange -> respond(exchange, SUMMARY));
+        server.createContext("/geoshape", exchange -> {
+            try {
+                Thread.sleep(shapeDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, SHAPE);
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testEnrichment() {
+        Map<String, Object> values = buildEnricher(5000).enrich(buildParis(), Locale.FRENCH);
+
+        Assert.assertEquals("Paris", ((Article) values.get("detailedDescription")).getTitle());
+        Assert.assertNotNull(values.get("image"));
+        Assert.assertTrue(values.get("geo") instanceof GeoShapeValue);
+    }
+
+    @Test
+    public void testDeadline() {
+        shapeDelay = 5000;
+        long start = System.currentTimeMillis();
+        Map<String, Object> values = buildEnricher(500).enrich(buildParis(), Locale.FRENCH);
+
+        Assert.assertTrue(System.currentTimeMillis() - start < 4000);
+        Assert.assertNotNull(values.get("detailedDescription"));
+        Assert.assertNull(values.get("geo"));
+    }
+
+    private EntityEnricher buildEnricher(long timeout) {
+        URI endpoint = URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+        return new EntityEnricher(new WikimediaREST(endpoint), new KartographerAPI(endpoint), 4, timeout);
+    }
+
+    private Resource buildParis() {
+        Resource resource = new Resource("wd:Q90");
+        resource.addType("Place");
+        resource.addClaim("sameAs", new StringValue("http://fr.wikipedia.org/wiki/Paris"));
+        return resource;
+    }
+
+    private void respond(HttpExchange exchange, String content) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import us.askplatyp.kb.lucene.model.IndexableResource;
+import us.askplatyp.kb.lucene.model.value.LocaleStringValue;
+import us.askplatyp.kb.lucene.model.value.StringValue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class CompactStoredFieldsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testFullLoading() throws IOException {
+        Path path = temporaryFolder.newFolder().toPath();
+        try (LuceneIndex index = buildIndex(path)) {
+            assertFullDocument(index);
+        }
+        try (LuceneIndex index = new LuceneIndex(path)) {
+            assertFullDocument(index);
+        }
+    }
+
+    @Test
+    public void testProjectedLoading() throws IOException {
+        try (LuceneIndex index = buildIndex(temporaryFolder.newFolder().toPath());
+             LuceneIndex.Reader reader = index.getReader()) {
+            int docID = reader.getDocIdForTerm(new Term("@id", "wd:Q1")).getAsInt();
+
+            Document document = reader.getDocumentForDocId(docID, new HashSet<>(Arrays.asList("@id", "notInSchema")));
+            Assert.assertEquals("wd:Q1", document.get("@id"));
+            Assert.assertEquals("foo", document.get("notInSchema"));
+            Assert.assertNull(document.get("name@en"));
+            Assert.assertNull(document.get("@type"));
+
+            Assert.assertEquals(0, reader.getDocumentForDocId(docID, Collections.emptySet()).getFields().size());
+        }
+    }
+
+    @Test
+    public void testDictionaryIsOnlyExtended() {
+        CompactStoredFields.Dictionary dictionary = CompactStoredFields.Dictionary.deserialize("removed\nname@en");
+        String serialized = dictionary.serialize();
+        Assert.assertTrue(serialized.startsWith("removed\nname@en\n"));
+        Assert.assertEquals(1, Collections.frequency(Arrays.asList(serialized.split("\n")), "name@en"));
+        Assert.assertTrue(Arrays.asList(serialized.split("\n")).contains("@id"));
+        Assert.assertEquals(serialized, CompactStoredFields.Dictionary.deserialize(serialized).serialize());
+    }
+
+    private void assertFullDocument(LuceneIndex index) throws IOException {
+        try (LuceneIndex.Reader reader = index.getReader()) {
+            Document document = reader.getDocumentForTerm(new Term("@id", "wd:Q1")).get();
+            Assert.assertEquals("wd:Q1", document.get("@id"));
+            Assert.assertEquals(new HashSet<>(Arrays.asList("Person", "Thing")), new HashSet<>(Arrays.asList(document.getValues("@type"))));
+            Assert.assertEquals("Foo", document.get("name@en"));
+            Assert.assertEquals("foo", document.get("notInSchema"));
+        }
+    }
+
+    private LuceneIndex buildIndex(Path path) throws IOException {
+        LuceneIndex index = new LuceneIndex(path);
+        IndexableResource resource = new IndexableResource("wd:Q1");
+        resource.addType("Person");
+        resource.addType("Thing");
+        resource.addClaim("name", new LocaleStringValue("Foo", Locale.ENGLISH));
+        resource.addClaim("notInSchema", new StringValue("foo"));
+        new LuceneLoader(index, true).addResource(resource);
+        index.refreshReaders();
+        return index;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import us.askplatyp.kb.lucene.model.IndexableResource;
+import us.askplatyp.kb.lucene.model.value.LocaleStringValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class LuceneIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReplaceWithNextGeneration() throws IOException {
+        Path currentPath = temporaryFolder.newFolder().toPath();
+        Path nextPath = temporaryFolder.newFolder().toPath();
+        try (LuceneIndex index = buildIndex(currentPath, "wd:Q1")) {
+            LuceneIndex nextGeneration = buildIndex(nextPath, "wd:Q2");
+            new LuceneLoader(index, false).addResource(new IndexableResource("wd:Q3"));
+            index.refreshReaders();
+            LuceneIndex.Reader oldReader = index.getReader();
+            long oldVersion = oldReader.getVersion();
+
+            index.replaceWith(nextGeneration);
+            LuceneIndex.deleteIndex(currentPath);
+            Assert.assertEquals(nextPath, index.getDirectoryPath());
+            Assert.assertFalse(Files.exists(currentPath));
+
+            Assert.assertTrue(oldReader.getDocumentForTerm(new Term("@id", "wd:Q1")).isPresent());
+            oldReader.close();
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                Assert.assertFalse(reader.getDocumentForTerm(new Term("@id", "wd:Q1")).isPresent());
+                Assert.assertTrue(reader.getDocumentForTerm(new Term("@id", "wd:Q2")).isPresent());
+                //The version keeps increasing even if the next generation has been opened before the last refresh
+                Assert.assertTrue(reader.getVersion() > oldVersion);
+            }
+        }
+    }
+
+    @Test
+    public void testLeaseIsBoundToGeneration() throws IOException {
+        try (LuceneIndex index = buildIndex(temporaryFolder.newFolder().toPath(), "wd:Q1")) {
+            long generation;
+            long version;
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                generation = reader.getLeaseGeneration();
+                version = reader.getLeaseVersion();
+                try (LuceneIndex.Reader leasedReader = reader.acquireLeasedReader(generation, version).get()) {
+                    Assert.assertTrue(leasedReader.getDocumentForTerm(new Term("@id", "wd:Q1")).isPresent());
+                }
+            }
+
+            //The reader versions of the next generation could be the same as the ones of the previous generation
+            index.replaceWith(buildIndex(temporaryFolder.newFolder().toPath(), "wd:Q2"));
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                Assert.assertNotEquals(generation, reader.getLeaseGeneration());
+                Assert.assertFalse(reader.acquireLeasedReader(generation, version).isPresent());
+                Assert.assertFalse(reader.acquireLeasedReader(generation, reader.getLeaseVersion()).isPresent());
+            }
+        }
+    }
+
+    @Test(expected = AlreadyClosedException.class, timeout = 10000)
+    public void testGetReaderAfterClose() throws IOException {
+        LuceneIndex index = buildIndex(temporaryFolder.newFolder().toPath(), "wd:Q1");
+        index.close();
+        index.getReader();
+    }
+
+    @Test(expected = IOException.class)
+    public void testEmptyGenerationIsRejected() throws IOException {
+        try (LuceneIndex index = buildIndex(temporaryFolder.newFolder().toPath(), "wd:Q1")) {
+            index.replaceWith(new LuceneIndex(temporaryFolder.newFolder().toPath()));
+        }
+    }
+
+    @Test
+    public void testCheckpointIsSavedInCommit() throws IOException {
+        Path path = temporaryFolder.newFolder().toPath();
+        try (LuceneIndex index = buildIndex(path, "wd:Q1")) {
+            index.saveCheckpoint("dump", 42);
+        }
+        try (LuceneIndex index = new LuceneIndex(path)) {
+            Assert.assertEquals(42, index.getCheckpoint("dump").getAsLong());
+            Assert.assertFalse(index.getCheckpoint("other-dump").isPresent());
+            index.clearCheckpoint();
+            index.refreshReaders();
+        }
+        try (LuceneIndex index = new LuceneIndex(path)) {
+            Assert.assertFalse(index.getCheckpoint("dump").isPresent());
+        }
+    }
+
+    @Test
+    public void testHasSimilarTerm() throws IOException {
+        try (LuceneIndex index = buildIndex(temporaryFolder.newFolder().toPath(), "wd:Q42");
+             LuceneIndex.Reader reader = index.getReader()) {
+            Assert.assertTrue(reader.hasSimilarTerm(new Term("@id", "wd:Q42"), 0));
+            Assert.assertFalse(reader.hasSimilarTerm(new Term("@id", "wd:Q4"), 0));
+            Assert.assertTrue(reader.hasSimilarTerm(new Term("@id", "wd:Q4"), 1));
+            Assert.assertFalse(reader.hasSimilarTerm(new Term("@id", "wd:P4"), 1));
+            Assert.assertTrue(reader.hasSimilarTerm(new Term("@id", "wd:P4"), 2));
+            Assert.assertFalse(reader.hasSimilarTerm(new Term("label@en", "wd:Q42"), 2));
+        }
+    }
+
+    @Test
+    public void testPrimaryKeyLookup() throws IOException {
+        Path path = temporaryFolder.newFolder().toPath();
+        try (LuceneIndex index = buildIndex(path, "wd:Q1")) {
+            LuceneLoader loader = new LuceneLoader(index, false);
+            loader.addResource(buildNamedResource("wd:Q2", "Two"));
+            loader.addResource(buildNamedResource("wd:Q3", "Three"));
+            index.refreshReaders();
+            loader.addResource(buildNamedResource("wd:Q1", "One"));
+            index.deleteDocument(new Term("@id", "wd:Q3"));
+            index.refreshReaders();
+            try (DirectoryReader directoryReader = DirectoryReader.open(FSDirectory.open(path))) {
+                Assert.assertTrue(directoryReader.leaves().size() > 1);
+            }
+
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                //The live version of an updated document is in the newest segment
+                Assert.assertEquals("One", reader.getDocumentForTerm(new Term("@id", "wd:Q1")).get().get("name@en"));
+                Assert.assertFalse(reader.getDocIdForTerm(new Term("@id", "wd:Q3")).isPresent());
+                Assert.assertFalse(reader.getDocIdForTerm(new Term("@id", "wd:Q4")).isPresent());
+
+                Map<String, Document> documents = reader.getDocumentsForTerms(
+                        "@id", Arrays.asList("wd:Q4", "wd:Q2", "wd:Q3", "wd:Q1", "wd:Q2"), Collections.singleton("name@en")
+                );
+                Assert.assertEquals(new HashSet<>(Arrays.asList("wd:Q1", "wd:Q2")), documents.keySet());
+                Assert.assertEquals("One", documents.get("wd:Q1").get("name@en"));
+                Assert.assertEquals("Two", documents.get("wd:Q2").get("name@en"));
+            }
+        }
+    }
+
+    @Test
+    public void testSearchByRankTotalHits() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            LuceneLoader loader = new LuceneLoader(index, false);
+            int count = LuceneIndex.TOTAL_HITS_THRESHOLD + 100;
+            for (int i = 0; i < count; i++) {
+                IndexableResource resource = new IndexableResource("wd:Q" + i);
+                resource.addToRank(i);
+                if (i % 100 == 0) {
+                    resource.addLabel(new LocaleStringValue("Foo", Locale.ENGLISH));
+                }
+                loader.addResource(resource);
+            }
+            index.refreshReaders();
+
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                //Above the threshold the collection stops early and the total is a lower bound
+                TopDocs topDocs = reader.searchByRank(null, new MatchAllDocsQuery(), 2);
+                Assert.assertEquals(TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO, topDocs.totalHits.relation);
+                Assert.assertTrue(topDocs.totalHits.value >= LuceneIndex.TOTAL_HITS_THRESHOLD);
+                Assert.assertTrue(topDocs.totalHits.value <= count);
+                Assert.assertEquals(count - 1, topDocs.scoreDocs[0].score, 0);
+                Assert.assertEquals(count - 2, topDocs.scoreDocs[1].score, 0);
+
+                topDocs = reader.searchByRank(null, new TermQuery(new Term("label@en", "foo")), 2);
+                Assert.assertEquals(new TotalHits(count / 100, TotalHits.Relation.EQUAL_TO), topDocs.totalHits);
+                Assert.assertEquals(1000, topDocs.scoreDocs[0].score, 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSearchByRankAfter() throws IOException {
+        Path path = temporaryFolder.newFolder().toPath();
+        try (LuceneIndex index = new LuceneIndex(path)) {
+            LuceneLoader loader = new LuceneLoader(index, false);
+            int count = 3 * LuceneIndex.TOTAL_HITS_THRESHOLD;
+            for (int i = 0; i < count; i++) {
+                IndexableResource resource = new IndexableResource("wd:Q" + i);
+                resource.addToRank(i % 700); //Some ranks are shared
+                if (i % 3 == 0) {
+                    resource.addLabel(new LocaleStringValue("Foo", Locale.ENGLISH));
+                }
+                if (i % 10 == 0) {
+                    resource.addLabel(new LocaleStringValue("Bar", Locale.ENGLISH));
+                }
+                loader.addResource(resource);
+                if (i % LuceneIndex.TOTAL_HITS_THRESHOLD == 0) {
+                    index.refreshReaders();
+                }
+            }
+            index.refreshReaders();
+            try (DirectoryReader directoryReader = DirectoryReader.open(FSDirectory.open(path))) {
+                Assert.assertTrue(directoryReader.leaves().size() > 1);
+            }
+
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                for (Query query : Arrays.asList(new MatchAllDocsQuery(), new TermQuery(new Term("label@en", "foo")))) {
+                    List<Integer> expected = new ArrayList<>();
+                    for (ScoreDoc scoreDoc : reader.searchByRank(null, query, count).scoreDocs) {
+                        expected.add(scoreDoc.doc);
+                    }
+                    List<Integer> paged = new ArrayList<>();
+                    FieldDoc after = null;
+                    do {
+                        TopDocs page = reader.searchByRank(after, query, 25);
+                        for (ScoreDoc scoreDoc : page.scoreDocs) {
+                            paged.add(scoreDoc.doc);
+                        }
+                        after = (page.scoreDocs.length == 25) ? (FieldDoc) page.scoreDocs[24] : null;
+                    } while (after != null);
+                    Assert.assertEquals(expected, paged);
+                }
+
+                //The documents before a deep page are only counted up to the threshold
+                FieldDoc after = (FieldDoc) reader.searchByRank(null, new MatchAllDocsQuery(), 2500).scoreDocs[2499];
+                TopDocs page = reader.searchByRank(after, new MatchAllDocsQuery(), 10);
+                Assert.assertEquals(10, page.scoreDocs.length);
+                Assert.assertEquals(TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO, page.totalHits.relation);
+                Assert.assertTrue(page.totalHits.value >= LuceneIndex.TOTAL_HITS_THRESHOLD);
+                Assert.assertTrue(page.totalHits.value < 2 * LuceneIndex.TOTAL_HITS_THRESHOLD);
+
+                //Below the threshold the total stays exact
+                Query rareQuery = new TermQuery(new Term("label@en", "bar"));
+                after = (FieldDoc) reader.searchByRank(null, rareQuery, 250).scoreDocs[249];
+                page = reader.searchByRank(after, rareQuery, 10);
+                Assert.assertEquals(new TotalHits(count / 10, TotalHits.Relation.EQUAL_TO), page.totalHits);
+            }
+        }
+    }
+
+    private IndexableResource buildNamedResource(String IRI, String name) {
+        IndexableResource resource = new IndexableResource(IRI);
+        resource.addClaim("name", new LocaleStringValue(name, Locale.ENGLISH));
+        return resource;
+    }
+
+    private LuceneIndex buildIndex(Path path, String IRI) throws IOException {
+        LuceneIndex index = new LuceneIndex(path);
+        new LuceneLoader(index, false).addResource(new IndexableResource(IRI));
+        index.refreshReaders();
+        return index;
+    }
+}
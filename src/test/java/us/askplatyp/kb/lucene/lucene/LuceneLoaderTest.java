@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import us.askplatyp.kb.lucene.model.IndexableResource;
+import us.askplatyp.kb.lucene.model.value.LocaleStringValue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class LuceneLoaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testResolveRawTypes() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            LuceneLoader loader = new LuceneLoader(index, true);
+            loader.addResource(buildResource("wd:Q1", "Q5", "Foo"));
+            loader.addResource(buildResource("wd:Q2", "Q4167410", "Bar"));
+            loader.resolveRawTypes(rawTypes -> rawTypes.contains("Q4167410")
+                    ? Optional.empty()
+                    : Optional.of(Collections.singleton("Person"))
+            );
+            index.refreshReaders();
+
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                Document document = reader.getDocumentForTerm(new Term("@id", "wd:Q1")).get();
+                Assert.assertEquals(Collections.singletonList("Person"), Arrays.asList(document.getValues("@type")));
+                Assert.assertEquals(0, document.getValues("@rawType").length);
+                Assert.assertEquals("Foo", document.get("name@en"));
+                Assert.assertTrue(reader.getDocIdForTerm(new Term("label@en", "foo")).isPresent());
+                Assert.assertTrue(reader.getDocIdForTerm(new Term("@type", "Person")).isPresent());
+
+                Assert.assertFalse(reader.getDocumentForTerm(new Term("@id", "wd:Q2")).isPresent());
+            }
+        }
+    }
+
+    @Test
+    public void testOutOfOrderUpdates() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            LuceneLoader loader = new LuceneLoader(index, true);
+            loader.addResource(buildResource("wd:Q1", 10, "Foo"));
+            index.refreshReaders();
+            loader.addResource(buildResource("wd:Q1", 9, "Old"));
+            index.refreshReaders();
+            assertName(index, "Foo");
+
+            loader.addResource(buildResource("wd:Q1", 11, "Bar"));
+            index.refreshReaders();
+            assertName(index, "Bar");
+        }
+    }
+
+    private void assertName(LuceneIndex index, String name) throws IOException {
+        try (LuceneIndex.Reader reader = index.getReader()) {
+            Assert.assertEquals(name, reader.getDocumentForTerm(new Term("@id", "wd:Q1")).get().get("name@en"));
+        }
+    }
+
+    private IndexableResource buildResource(String IRI, long revisionId, String label) {
+        IndexableResource resource = buildResource(IRI, "Q5", label);
+        resource.setRevisionId(revisionId);
+        return resource;
+    }
+
+    private IndexableResource buildResource(String IRI, String rawType, String label) {
+        IndexableResource resource = new IndexableResource(IRI);
+        resource.addRawType(rawType);
+        LocaleStringValue value = new LocaleStringValue(label, Locale.ENGLISH);
+        resource.addClaim("name", value);
+        resource.addLabel(value);
+        resource.addToRank(3);
+        return resource;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.lucene;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import us.askplatyp.kb.lucene.model.IndexableResource;
+import us.askplatyp.kb.lucene.model.Resource;
+import us.askplatyp.kb.lucene.model.ResourceProjection;
+import us.askplatyp.kb.lucene.model.ResourceSearchResult;
+import us.askplatyp.kb.lucene.model.value.LocaleStringValue;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class LuceneLookupTest {
+
+    private static final ResourceProjection PROJECTION = new ResourceProjection(Collections.singleton("name"), Locale.ENGLISH);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPaginationOrder() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            LuceneLoader loader = new LuceneLoader(index);
+            loader.addResource(buildResource("wd:Q3", 1));
+            loader.addResource(buildResource("wd:Q1", 1));
+            loader.addResource(buildResource("wd:Q4", 2));
+            loader.addResource(buildResource("wd:Q2", 1));
+            index.refreshReaders();
+
+            ResourceSearchResult result = search(index, null);
+            assertPage(result, "wd:Q4");
+            result = search(index, result.getNextContinue());
+            assertPage(result, "wd:Q1");
+            result = search(index, result.getNextContinue());
+            assertPage(result, "wd:Q2");
+            result = search(index, result.getNextContinue());
+            assertPage(result, "wd:Q3");
+            Assert.assertNull(search(index, result.getNextContinue()).getNextContinue());
+        }
+    }
+
+    @Test
+    public void testPaginationDuringUpdates() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            LuceneLoader loader = new LuceneLoader(index);
+            loader.addResource(buildResource("wd:Q1", 1));
+            loader.addResource(buildResource("wd:Q2", 1));
+            loader.addResource(buildResource("wd:Q3", 1));
+            index.refreshReaders();
+
+            ResourceSearchResult result = search(index, null);
+            assertPage(result, "wd:Q1");
+
+            //The next pages are read from the index version of the first one
+            loader.addResource(buildResource("wd:Q0", 1));
+            loader.addResource(buildResource("wd:Q2", 5));
+            index.refreshReaders();
+            result = search(index, result.getNextContinue());
+            assertPage(result, "wd:Q2");
+            Assert.assertEquals(3, result.getTotalHits());
+            result = search(index, result.getNextContinue());
+            assertPage(result, "wd:Q3");
+
+            Assert.assertEquals(4, search(index, null).getTotalHits());
+        }
+    }
+
+    @Test
+    public void testPaginationAfterGenerationSwitch() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            LuceneLoader loader = new LuceneLoader(index);
+            loader.addResource(buildResource("wd:Q1", 1));
+            loader.addResource(buildResource("wd:Q2", 1));
+            index.refreshReaders();
+            ResourceSearchResult result = search(index, null);
+            assertPage(result, "wd:Q1");
+
+            //The next pages are read from the new generation
+            LuceneIndex nextGeneration = new LuceneIndex(temporaryFolder.newFolder().toPath());
+            loader = new LuceneLoader(nextGeneration);
+            loader.addResource(buildResource("wd:Q1", 1));
+            loader.addResource(buildResource("wd:Q2", 1));
+            loader.addResource(buildResource("wd:Q3", 1));
+            index.replaceWith(nextGeneration);
+            result = search(index, result.getNextContinue());
+            assertPage(result, "wd:Q2");
+            Assert.assertEquals(3, result.getTotalHits());
+        }
+    }
+
+    @Test
+    public void testGetResourcesForIRIs() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            LuceneLoader loader = new LuceneLoader(index);
+            loader.addResource(buildResource("wd:Q1", 1));
+            loader.addResource(buildResource("wd:Q2", 1));
+            index.refreshReaders();
+
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                Map<String, Resource> resources = new LuceneLookup(reader).getResourcesForIRIs(Arrays.asList(
+                        "wd:Q1", "http://www.wikidata.org/entity/Q1", "wd:Q2", "wd:Q2", "wd:Q404"
+                ), PROJECTION);
+                Assert.assertEquals(
+                        new HashSet<>(Arrays.asList("wd:Q1", "http://www.wikidata.org/entity/Q1", "wd:Q2")),
+                        resources.keySet()
+                );
+                Assert.assertSame(resources.get("wd:Q1"), resources.get("http://www.wikidata.org/entity/Q1"));
+                Assert.assertEquals("wd:Q2", resources.get("wd:Q2").getIRI());
+            }
+        }
+    }
+
+    @Test
+    public void testProjection() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            IndexableResource resource = buildResource("wd:Q1", 1);
+            resource.addClaim("name", new LocaleStringValue("Toto", Locale.FRENCH));
+            resource.addClaim("description", new LocaleStringValue("Bar", Locale.ENGLISH));
+            new LuceneLoader(index).addResource(resource);
+            index.refreshReaders();
+
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                LuceneLookup lookup = new LuceneLookup(reader);
+                Resource projected = lookup.getResourcesForIRIs(Collections.singleton("wd:Q1"), PROJECTION).get("wd:Q1");
+                Assert.assertEquals(Collections.singleton("Foo"), getValues(projected, "name"));
+                Assert.assertEquals(Collections.emptySet(), getValues(projected, "description"));
+
+                projected = lookup.getResourcesForIRIs(
+                        Collections.singleton("wd:Q1"), new ResourceProjection(Collections.singleton("name"), null)
+                ).get("wd:Q1");
+                Assert.assertEquals(new HashSet<>(Arrays.asList("Foo", "Toto")), getValues(projected, "name"));
+                Assert.assertEquals(Collections.emptySet(), getValues(projected, "description"));
+
+                Assert.assertEquals(Collections.singleton("Bar"), getValues(lookup.getResourceForIRI("wd:Q1").get(), "description"));
+            }
+        }
+    }
+
+    @Test
+    public void testAutocompleteWithManyLabelsPerResource() throws IOException {
+        try (LuceneIndex index = new LuceneIndex(temporaryFolder.newFolder().toPath())) {
+            LuceneLoader loader = new LuceneLoader(index);
+            for (int i = 1; i <= 4; i++) {
+                IndexableResource resource = buildResource("wd:Q" + i, 10 - i);
+                for (int j = 0; j < 10; j++) {
+                    resource.addLabel(new LocaleStringValue("Foo " + j, Locale.ENGLISH));
+                }
+                loader.addResource(resource);
+            }
+            index.refreshReaders();
+
+            try (LuceneIndex.Reader reader = index.getReader()) {
+                ResourceSearchResult result = new LuceneLookup(reader)
+                        .getResourcesForLabelPrefix("fo", null, Locale.ENGLISH, 3, PROJECTION);
+                Assert.assertEquals(
+                        Arrays.asList("wd:Q1", "wd:Q2", "wd:Q3"),
+                        result.getResources().stream().map(resource -> resource.getResource().getIRI()).collect(Collectors.toList())
+                );
+                Assert.assertEquals(3, result.getTotalHits());
+            }
+        }
+    }
+
+    /**
+     * The language-tagged values are repeated for each supported locale of their language
+     */
+    private Set<String> getValues(Resource resource, String property) {
+        return resource.getValuesForProperty(property).map(Object::toString).collect(Collectors.toSet());
+    }
+
+    private ResourceSearchResult search(LuceneIndex index, String continueToken) throws IOException {
+        try (LuceneIndex.Reader reader = index.getReader()) {
+            return new LuceneLookup(reader).getResourcesForLabel(null, null, Locale.ENGLISH, continueToken, 1, PROJECTION);
+        }
+    }
+
+    private void assertPage(ResourceSearchResult result, String IRI) {
+        Assert.assertEquals(1, result.getResources().size());
+        Assert.assertEquals(IRI, result.getResources().get(0).getResource().getIRI());
+        Assert.assertNotNull(result.getNextContinue());
+    }
+
+    private IndexableResource buildResource(String IRI, int rank) {
+        IndexableResource resource = new IndexableResource(IRI);
+        LocaleStringValue value = new LocaleStringValue("Foo", Locale.ENGLISH);
+        resource.addClaim("name", value);
+        resource.addLabel(value);
+        resource.addToRank(rank);
+        return resource;
+    }
+}
@@ -49,15 +49,20 @@ public class FakeWikidataLuceneIndexFactory implements Factory<LuceneIndex> {
             index = new LuceneIndex(temporaryFolder.newFolder().toPath());
             DumpProcessingController dumpProcessingController = new DumpProcessingController("wikidatawiki");
             dumpProcessingController.setDownloadDirectory(temporaryFolder.newFolder().toString());
-            dumpProcessingController.registerEntityDocumentProcessor(typeHierarchy.getUpdateProcessor(), null, true);
-            dumpProcessingController.processDump(fakeDump);
+            typeHierarchy.loadFromDump(fakeDump, 2);
 
-            dumpProcessingController.registerEntityDocumentProcessor(
-                    new WikidataResourceProcessor(new LuceneLoader(index), dumpProcessingController.getSitesInformation(), typeHierarchy),
-                    null,
-                    true
+            WikidataResourceProcessor wikidataResourceProcessor = new WikidataResourceProcessor(
+                    new LuceneLoader(index), dumpProcessingController.getSitesInformation(), typeHierarchy
             );
-            dumpProcessingController.processDump(fakeDump);
+            //A single worker keeps the dump order as documents order on which the order of equally scored results depends
+            try (ParallelEntityDocumentProcessor resourceProcessor = new ParallelEntityDocumentProcessor(wikidataResourceProcessor, 1, 16)) {
+                index.startBulkLoad();
+                ParallelJsonDumpReader dumpReader = new ParallelJsonDumpReader(resourceProcessor, null, 2);
+                dumpReader.setItemPropertyFilter(wikidataResourceProcessor.getUsedPropertyIds());
+                dumpReader.processDump(fakeDump);
+                resourceProcessor.flush();
+                index.finishBulkLoad();
+            }
             index.refreshReaders();
         }
     }
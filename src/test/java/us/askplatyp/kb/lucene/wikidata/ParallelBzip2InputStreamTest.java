@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class ParallelBzip2InputStreamTest {
+
+    @Test(timeout = 60000)
+    public void testMultistream() throws IOException {
+        byte[] first = buildContent(1, 500000);
+        byte[] second = buildContent(2, 300000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(compress(first));
+        compressed.write(compress(second));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        try (InputStream inputStream = new ParallelBzip2InputStream(new ByteArrayInputStream(compressed.toByteArray()), 4)) {
+            Assert.assertArrayEquals(expected.toByteArray(), inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testFalseBlockBoundary() throws IOException {
+        byte[] content = buildContent(3, 10000);
+        byte[] compressed = compress(content);
+        //The block is cut at an arbitrary bit as if a block magic number has been found there
+        long cut = 32 + 48 + 32 + 1000;
+        ParallelBzip2InputStream.Segment first = new ParallelBzip2InputStream.Segment(
+                32, Arrays.copyOfRange(compressed, 4, (int) ((cut + 7) / 8)), cut - 32, true
+        );
+        ParallelBzip2InputStream.Segment second = new ParallelBzip2InputStream.Segment(
+                cut, Arrays.copyOfRange(compressed, (int) (cut / 8), compressed.length), 8L * compressed.length - cut, true
+        );
+        try {
+            first.decompress();
+            Assert.fail("The truncated block should not be valid");
+        } catch (IOException | RuntimeException e) {
+            //The CRC does not match
+        }
+        Assert.assertArrayEquals(content, first.append(second).decompress());
+    }
+
+    @Test(expected = IOException.class, timeout = 10000)
+    public void testTruncatedStream() throws IOException {
+        byte[] compressed = compress(buildContent(4, 300000));
+        try (InputStream inputStream = new ParallelBzip2InputStream(new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length / 2)), 2)) {
+            inputStream.readAllBytes();
+        }
+    }
+
+    @Test(expected = IOException.class, timeout = 10000)
+    public void testNotBzip2Stream() throws IOException {
+        try (InputStream inputStream = new ParallelBzip2InputStream(new ByteArrayInputStream("[\n]\n".getBytes(StandardCharsets.UTF_8)), 2)) {
+            inputStream.readAllBytes();
+        }
+    }
+
+    private static byte[] buildContent(long seed, int length) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < length) {
+            builder.append("{\"id\":\"Q").append(random.nextInt(100000)).append("\",\"label\":\"")
+                    .append(Long.toString(random.nextLong(), 36)).append("\"},\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new BZip2CompressorOutputStream(compressed, 1)) {
+            outputStream.write(content);
+        }
+        return compressed.toByteArray();
+    }
+}
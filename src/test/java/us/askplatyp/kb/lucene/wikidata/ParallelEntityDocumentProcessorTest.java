@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class ParallelEntityDocumentProcessorTest {
+
+    @Test
+    public void testRevisionsOfAnEntityAreProcessedInOrder() {
+        Map<String, List<Long>> revisions = new ConcurrentHashMap<>();
+        EntityDocumentProcessor recorder = new EntityDocumentProcessor() {
+            @Override
+            public void processItemDocument(ItemDocument itemDocument) {
+                revisions.computeIfAbsent(itemDocument.getEntityId().getId(), id -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(itemDocument.getRevisionId());
+            }
+        };
+        try (ParallelEntityDocumentProcessor processor = new ParallelEntityDocumentProcessor(recorder, 4, 2)) {
+            for (long revision = 1; revision <= 50; revision++) {
+                for (int i = 1; i <= 20; i++) {
+                    processor.processItemDocument(buildItem(i).withRevisionId(revision));
+                }
+            }
+            processor.flush();
+        }
+
+        List<Long> expected = LongStream.rangeClosed(1, 50).boxed().collect(Collectors.toList());
+        Assert.assertEquals(20, revisions.size());
+        for (List<Long> entityRevisions : revisions.values()) {
+            Assert.assertEquals(expected, entityRevisions);
+        }
+    }
+
+    @Test
+    public void testFailureIsThrownByFlush() {
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        RuntimeException failure = new RuntimeException("Q3 is broken");
+        EntityDocumentProcessor recorder = new EntityDocumentProcessor() {
+            @Override
+            public void processItemDocument(ItemDocument itemDocument) {
+                if (itemDocument.getEntityId().getId().equals("Q3")) {
+                    throw failure;
+                }
+                processed.add(itemDocument.getEntityId().getId());
+            }
+        };
+        try (ParallelEntityDocumentProcessor processor = new ParallelEntityDocumentProcessor(recorder, 1, 8)) {
+            for (int i = 1; i <= 5; i++) {
+                processor.processItemDocument(buildItem(i));
+            }
+            try {
+                processor.flush();
+                Assert.fail("The failure should be thrown");
+            } catch (IllegalStateException e) {
+                Assert.assertSame(failure, e.getCause());
+            }
+            //The documents after the failure are not processed and no new document is accepted
+            Assert.assertEquals(Arrays.asList("Q1", "Q2"), processed);
+            try {
+                processor.processItemDocument(buildItem(6));
+                Assert.fail("The failure should be thrown");
+            } catch (IllegalStateException e) {
+                Assert.assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorIsThrownByFlush() {
+        Error failure = new StackOverflowError();
+        EntityDocumentProcessor recorder = new EntityDocumentProcessor() {
+            @Override
+            public void processItemDocument(ItemDocument itemDocument) {
+                throw failure;
+            }
+        };
+        try (ParallelEntityDocumentProcessor processor = new ParallelEntityDocumentProcessor(recorder, 1, 2)) {
+            //More documents than the queue size: the worker should keep draining its queue
+            for (int i = 1; i <= 10; i++) {
+                processor.processItemDocument(buildItem(i));
+            }
+            Assert.fail("The failure should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+    }
+
+    private static ItemDocument buildItem(int id) {
+        return Datamodel.makeItemDocument(Datamodel.makeWikidataItemIdValue("Q" + id));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.dumpfiles.MwLocalDumpFile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class ParallelJsonDumpReaderTest {
+
+    private static final int ITEM_COUNT = 2000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testProcessDump() throws IOException {
+        File dumpFile = temporaryFolder.newFile("wikidata-20180101-all.json.bz2");
+        try (OutputStream outputStream = new BZip2CompressorOutputStream(new FileOutputStream(dumpFile), 1)) {
+            //Several blocks decompressed in parallel
+            outputStream.write("[\n".getBytes(StandardCharsets.UTF_8));
+            for (int i = 1; i <= ITEM_COUNT; i++) {
+                outputStream.write(("{\"type\":\"item\",\"id\":\"Q" + i + "\",\"labels\":{" +
+                        "\"en\":{\"language\":\"en\",\"value\":\"item " + i + "\"}," +
+                        "\"fr\":{\"language\":\"fr\",\"value\":\"élément " + i + "\"}},\"claims\":{}},\n").getBytes(StandardCharsets.UTF_8));
+            }
+            outputStream.write("{\"type\":\"item\",\"id\":\"Q0\",\"labels\":42},\n".getBytes(StandardCharsets.UTF_8));
+            outputStream.write("{\"type\":\"property\",\"id\":\"P31\",\"datatype\":\"wikibase-item\",\"claims\":{}}\n]\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<String> ids = new ArrayList<>();
+        new ParallelJsonDumpReader(new EntityDocumentProcessor() {
+            @Override
+            public void processItemDocument(ItemDocument itemDocument) {
+                Assert.assertEquals(Collections.singleton("en"), itemDocument.getLabels().keySet());
+                ids.add(itemDocument.getEntityId().getId());
+            }
+
+            @Override
+            public void processPropertyDocument(PropertyDocument propertyDocument) {
+                ids.add(propertyDocument.getEntityId().getId());
+            }
+        }, Collections.singleton("en"), 4).processDump(new MwLocalDumpFile(dumpFile.getPath()));
+
+        Assert.assertEquals(ITEM_COUNT + 1, ids.size());
+        for (int i = 1; i <= ITEM_COUNT; i++) {
+            Assert.assertEquals("Q" + i, ids.get(i - 1));
+        }
+        Assert.assertEquals("P31", ids.get(ITEM_COUNT));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class ReadAheadInputStreamTest {
+
+    @Test
+    public void testRead() throws IOException {
+        try (InputStream inputStream = new ReadAheadInputStream(new FailingInputStream(null))) {
+            Assert.assertEquals("foo", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSourceFailure() throws IOException {
+        RuntimeException failure = new IllegalStateException("corrupted block");
+        try (InputStream inputStream = new ReadAheadInputStream(new FailingInputStream(failure))) {
+            inputStream.readAllBytes();
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(failure, e.getCause());
+        }
+    }
+
+    private static class FailingInputStream extends InputStream {
+
+        private final InputStream content = new ByteArrayInputStream("foo".getBytes(StandardCharsets.UTF_8));
+        private final RuntimeException failure;
+
+        private FailingInputStream(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = content.read();
+            if (read == -1 && failure != null) {
+                throw failure;
+            }
+            return read;
+        }
+    }
+}
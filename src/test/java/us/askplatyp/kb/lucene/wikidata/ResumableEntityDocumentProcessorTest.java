@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+
+import java.util.*;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class ResumableEntityDocumentProcessorTest {
+
+    private final Map<String, Long> checkpoints = new HashMap<>();
+    private final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+    private String failingId;
+
+    @Test
+    public void testResumeAfterLastCheckpoint() {
+        ResumableEntityDocumentProcessor processor = buildProcessor();
+        processor.startDump("dump");
+        processItems(processor, 1, 3);
+        Assert.assertEquals(Long.valueOf(2), checkpoints.get("dump"));
+
+        //The process stops here: Q3 has not been saved
+        processor.finishDump();
+        processed.clear();
+        processor = buildProcessor();
+        processor.startDump("dump");
+        processItems(processor, 1, 5);
+        processor.finishDump();
+        Assert.assertEquals(Arrays.asList("Q3", "Q4", "Q5"), processed);
+    }
+
+    @Test
+    public void testInterruptionSavesCheckpoint() {
+        ResumableEntityDocumentProcessor processor = buildProcessor();
+        processor.startDump("dump");
+        processItems(processor, 1, 3);
+        processor.interruptDump();
+        Assert.assertEquals(Long.valueOf(3), checkpoints.get("dump"));
+    }
+
+    @Test
+    public void testInterruptionAfterFailureKeepsCheckpoint() {
+        failingId = "Q4";
+        ResumableEntityDocumentProcessor processor = buildProcessor();
+        processor.startDump("dump");
+        try {
+            processItems(processor, 1, 5);
+            Assert.fail("The failure should be thrown by the checkpoint after Q4");
+        } catch (IllegalStateException e) {
+            processor.interruptDump();
+        }
+        Assert.assertEquals(Long.valueOf(2), checkpoints.get("dump"));
+    }
+
+    private ResumableEntityDocumentProcessor buildProcessor() {
+        EntityDocumentProcessor recorder = new EntityDocumentProcessor() {
+            @Override
+            public void processItemDocument(ItemDocument itemDocument) {
+                if (itemDocument.getEntityId().getId().equals(failingId)) {
+                    throw new IllegalArgumentException("Not able to process " + failingId);
+                }
+                processed.add(itemDocument.getEntityId().getId());
+            }
+        };
+        return new ResumableEntityDocumentProcessor(
+                new ParallelEntityDocumentProcessor(recorder, 1, 4),
+                new ResumableEntityDocumentProcessor.CheckpointStore() {
+                    @Override
+                    public OptionalLong getCheckpoint(String dumpId) {
+                        return checkpoints.containsKey(dumpId) ? OptionalLong.of(checkpoints.get(dumpId)) : OptionalLong.empty();
+                    }
+
+                    @Override
+                    public void saveCheckpoint(String dumpId, long position) {
+                        checkpoints.put(dumpId, position);
+                    }
+                },
+                2
+        );
+    }
+
+    private void processItems(EntityDocumentProcessor processor, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            processor.processItemDocument(Datamodel.makeItemDocument(Datamodel.makeWikidataItemIdValue("Q" + i)));
+        }
+    }
+}
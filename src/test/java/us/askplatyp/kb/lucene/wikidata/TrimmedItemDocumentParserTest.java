@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelMapper;
+import org.wikidata.wdtk.datamodel.implementation.SnakImpl;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.Statement;
+import org.wikidata.wdtk.datamodel.interfaces.StatementGroup;
+import org.wikidata.wdtk.datamodel.interfaces.StatementRank;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class TrimmedItemDocumentParserTest {
+
+    private static final String ITEM = "{\"type\":\"item\",\"id\":\"Q42\",\"lastrevid\":1234," +
+            "\"labels\":{\"en\":{\"language\":\"en\",\"value\":\"Douglas Adams\"},\"xx\":{\"language\":\"xx\",\"value\":\"Douglas\"}}," +
+            "\"descriptions\":[]," +
+            "\"aliases\":{\"en\":[{\"language\":\"en\",\"value\":\"DNA\"},{\"language\":\"en\",\"value\":\"Douglas Noël Adams\"}]}," +
+            "\"claims\":{" +
+            "\"P31\":[" + statement("P31", "Q5", "normal") + "," + statement("P31", "Q1", "preferred") + "," + statement("P31", "Q2", "deprecated") + "]," +
+            "\"P999\":[" + statement("P999", "Q3", "normal") + "]," +
+            "\"P21\":[" + statement("P21", "Q6581097", "normal") + "," + statement("P21", "Q43445", "normal") + "]}," +
+            "\"sitelinks\":{\"enwiki\":{\"site\":\"enwiki\",\"title\":\"Douglas Adams\",\"badges\":[\"Q17437798\"]}}}";
+    private static final DatamodelMapper MAPPER = new DatamodelMapper("http://www.wikidata.org/entity/");
+
+    private static String statement(String property, String value, String rank) {
+        return "{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"" + property + "\",\"datavalue\":{\"value\":" +
+                "{\"entity-type\":\"item\",\"numeric-id\":" + value.substring(1) + ",\"id\":\"" + value + "\"},\"type\":\"wikibase-entityid\"}}," +
+                "\"type\":\"statement\",\"id\":\"Q42$" + value + "\",\"rank\":\"" + rank + "\"," +
+                "\"qualifiers\":{\"P580\":[{\"snaktype\":\"somevalue\",\"property\":\"P580\"}]},\"references\":[{\"hash\":\"a\",\"snaks\":{}}]}";
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        TrimmedItemDocumentParser parser = new TrimmedItemDocumentParser(
+                MAPPER.readerFor(SnakImpl.class), Collections.singleton("en"), new HashSet<>(Arrays.asList("P21", "P31"))
+        );
+        ItemDocument item = parser.parse(ITEM.getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals("Q42", item.getEntityId().getId());
+        Assert.assertEquals(1234, item.getRevisionId());
+        Assert.assertEquals(Collections.singleton("en"), item.getLabels().keySet());
+        Assert.assertEquals("Douglas Adams", item.findLabel("en"));
+        Assert.assertEquals(2, item.getAliases().get("en").size());
+        Assert.assertEquals("Douglas Adams", item.getSiteLinks().get("enwiki").getPageTitle());
+        Assert.assertNull(item.findStatementGroup("P999"));
+
+        StatementGroup types = item.findStatementGroup("P31");
+        Assert.assertEquals(Collections.singletonList(Datamodel.makeWikidataItemIdValue("Q1")),
+                types.getStatements().stream().map(Statement::getValue).collect(Collectors.toList()));
+        Assert.assertTrue(types.getStatements().get(0).getQualifiers().isEmpty());
+        Assert.assertEquals(2, item.findStatementGroup("P21").size());
+    }
+
+    @Test
+    public void testParseKeepsAllSubclassOfStatements() throws IOException {
+        String item = "{\"type\":\"item\",\"id\":\"Q42\",\"claims\":{\"P279\":[" +
+                statement("P279", "Q1", "normal") + "," + statement("P279", "Q2", "preferred") + "," + statement("P279", "Q3", "deprecated") + "]," +
+                "\"P31\":[" + statement("P31", "Q5", "normal") + "," + statement("P31", "Q6", "preferred") + "]}}";
+        TrimmedItemDocumentParser parser = new TrimmedItemDocumentParser(
+                MAPPER.readerFor(SnakImpl.class), null, new HashSet<>(Arrays.asList("P31", "P279"))
+        );
+        ItemDocument document = parser.parse(item.getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(
+                Arrays.asList(Datamodel.makeWikidataItemIdValue("Q1"), Datamodel.makeWikidataItemIdValue("Q2"), Datamodel.makeWikidataItemIdValue("Q3")),
+                document.findStatementGroup("P279").getStatements().stream().map(Statement::getValue).collect(Collectors.toList())
+        );
+        Assert.assertEquals(
+                Arrays.asList(StatementRank.NORMAL, StatementRank.PREFERRED, StatementRank.DEPRECATED),
+                document.findStatementGroup("P279").getStatements().stream().map(Statement::getRank).collect(Collectors.toList())
+        );
+        Assert.assertEquals(
+                Collections.singletonList(Datamodel.makeWikidataItemIdValue("Q6")),
+                document.findStatementGroup("P31").getStatements().stream().map(Statement::getValue).collect(Collectors.toList())
+        );
+    }
+
+    @Test
+    public void testParseNotItem() throws IOException {
+        TrimmedItemDocumentParser parser = new TrimmedItemDocumentParser(MAPPER.readerFor(SnakImpl.class), null, Collections.emptySet());
+        Assert.assertNull(parser.parse("{\"type\":\"property\",\"id\":\"P31\",\"datatype\":\"wikibase-item\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+}
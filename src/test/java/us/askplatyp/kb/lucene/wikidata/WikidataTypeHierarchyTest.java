@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.dumpfiles.MwLocalDumpFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class WikidataTypeHierarchyTest {
+
+    private static final String DUMP = "[\n" +
+            "{\"type\":\"item\",\"id\":\"Q5\",\"labels\":{\"en\":{\"language\":\"en\",\"value\":\"human {\\\"}\"}}," +
+            "\"claims\":{\"P31\":[{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"P31\",\"datavalue\":{\"value\":{\"entity-type\":\"item\",\"id\":\"Q1\"},\"type\":\"wikibase-entityid\"}}}]," +
+            "\"P279\":[{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"P279\",\"datavalue\":{\"value\":{\"entity-type\":\"item\",\"id\":\"Q215627\"},\"type\":\"wikibase-entityid\"}},\"rank\":\"normal\"}," +
+            "{\"mainsnak\":{\"snaktype\":\"novalue\",\"property\":\"P279\"}}," +
+            "{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"P279\",\"datavalue\":{\"value\":{\"entity-type\":\"item\",\"numeric-id\":154954},\"type\":\"wikibase-entityid\"}}}]}},\n" +
+            "{\n  \"type\": \"item\",\n  \"id\": \"Q42\",\n  \"labels\": [],\n  \"claims\": []\n},\n" +
+            "{\"type\":\"property\",\"id\":\"P279\",\"datatype\":\"wikibase-item\",\"claims\":{}}\n" +
+            "]\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testLoadFromDump() throws IOException {
+        File dumpFile = temporaryFolder.newFile("wikidata-20180101-all.json");
+        Files.write(dumpFile.toPath(), DUMP.getBytes(StandardCharsets.UTF_8));
+        File databaseFile = new File(temporaryFolder.getRoot(), "wd-builder");
+
+        try (WikidataTypeHierarchy typeHierarchy = new WikidataTypeHierarchy(databaseFile.toPath())) {
+            typeHierarchy.loadFromDump(new MwLocalDumpFile(dumpFile.getPath()), 2);
+            Assert.assertEquals(
+                    Arrays.asList(Datamodel.makeWikidataItemIdValue("Q215627"), Datamodel.makeWikidataItemIdValue("Q154954")),
+                    typeHierarchy.getSuperClasses(Datamodel.makeWikidataItemIdValue("Q5"))
+            );
+            Assert.assertEquals(Collections.emptyList(), typeHierarchy.getSuperClasses(Datamodel.makeWikidataItemIdValue("Q42")));
+        }
+
+        //The hierarchy is kept and the same dump is not scanned again
+        Files.write(dumpFile.toPath(), "[".getBytes(StandardCharsets.UTF_8));
+        try (WikidataTypeHierarchy typeHierarchy = new WikidataTypeHierarchy(databaseFile.toPath())) {
+            typeHierarchy.loadFromDump(new MwLocalDumpFile(dumpFile.getPath()), 2);
+            Assert.assertEquals(2, typeHierarchy.getSuperClasses(Datamodel.makeWikidataItemIdValue("Q5")).size());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikidata.mapping;
+
+import com.google.common.collect.Sets;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.ItemDocumentBuilder;
+import org.wikidata.wdtk.datamodel.helpers.StatementBuilder;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
+import us.askplatyp.kb.lucene.wikidata.WikidataTypeHierarchy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class TypeMapperTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private WikidataTypeHierarchy typeHierarchy;
+
+    @Before
+    public void buildHierarchy() throws IOException {
+        File file = temporaryFolder.newFile();
+        file.delete();
+        typeHierarchy = new WikidataTypeHierarchy(file.toPath());
+        EntityDocumentProcessor updater = typeHierarchy.getUpdateProcessor();
+        addSubClassOf(updater, "Q1", "Q515"); //city
+        addSubClassOf(updater, "Q2", "Q1");
+        addSubClassOf(updater, "Q3", "Q4167410"); //disambiguation page
+        addSubClassOf(updater, "Q7", "Q8");
+        addSubClassOf(updater, "Q8", "Q7");
+    }
+
+    @After
+    public void closeHierarchy() {
+        typeHierarchy.close();
+    }
+
+    @Test
+    public void testMapping() {
+        TypeMapper typeMapper = new TypeMapper(typeHierarchy);
+
+        Assert.assertEquals(Sets.newHashSet("Place", "AdministrativeArea", "City"), mapClass(typeMapper, "Q2"));
+        Assert.assertEquals(Sets.newHashSet("Place", "AdministrativeArea", "City"), mapClass(typeMapper, "Q515"));
+        Assert.assertEquals(Sets.newHashSet(), mapClass(typeMapper, "Q7"));
+        Assert.assertEquals(Sets.newHashSet(), mapClass(typeMapper, "Q9"));
+        Assert.assertTrue(typeMapper.isFilteredClass(Datamodel.makeWikidataItemIdValue("Q3")));
+        Assert.assertFalse(typeMapper.isFilteredClass(Datamodel.makeWikidataItemIdValue("Q2")));
+    }
+
+    @Test
+    public void testHierarchyUpdate() {
+        TypeMapper typeMapper = new TypeMapper(typeHierarchy);
+        Assert.assertEquals(Sets.newHashSet("Place", "AdministrativeArea", "City"), mapClass(typeMapper, "Q2"));
+
+        //The changes are visible before the rebuild of the closure table
+        EntityDocumentProcessor updater = typeHierarchy.getUpdateProcessor();
+        addSubClassOf(updater, "Q1", "Q5"); //human
+        addSubClassOf(updater, "Q9", "Q3");
+        Assert.assertEquals(Sets.newHashSet("Person"), mapClass(typeMapper, "Q2"));
+        Assert.assertTrue(typeMapper.isFilteredClass(Datamodel.makeWikidataItemIdValue("Q9")));
+        Assert.assertEquals(Optional.of(Sets.newHashSet("Person")), typeMapper.resolveTypes(Arrays.asList("Q2", "Q7")));
+        Assert.assertEquals(Optional.empty(), typeMapper.resolveTypes(Arrays.asList("Q2", "Q9")));
+    }
+
+    @Test
+    public void testUnchangedHierarchyUpdate() {
+        TypeMapper typeMapper = new TypeMapper(typeHierarchy);
+        Assert.assertTrue(typeMapper.isTypeTableUpToDate());
+
+        EntityDocumentProcessor updater = typeHierarchy.getUpdateProcessor();
+        addSubClassOf(updater, "Q1", "Q515");
+        addSubClassOf(updater, "Q2", "Q1");
+        Assert.assertTrue(typeMapper.isTypeTableUpToDate());
+
+        addSubClassOf(updater, "Q2", "Q5");
+        Assert.assertFalse(typeMapper.isTypeTableUpToDate());
+    }
+
+    private Set<String> mapClass(TypeMapper typeMapper, String itemId) {
+        return typeMapper.mapMainItemIdValue(Datamodel.makeWikidataItemIdValue(itemId))
+                .map(claim -> claim.getValue().toString())
+                .collect(Collectors.toSet());
+    }
+
+    private void addSubClassOf(EntityDocumentProcessor updater, String itemId, String superClassId) {
+        ItemIdValue item = Datamodel.makeWikidataItemIdValue(itemId);
+        updater.processItemDocument(ItemDocumentBuilder.forItemId(item)
+                .withStatement(StatementBuilder
+                        .forSubjectAndProperty(item, Datamodel.makeWikidataPropertyIdValue("P279"))
+                        .withValue(Datamodel.makeWikidataItemIdValue(superClassId))
+                        .build())
+                .build());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikimedia.rest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.vividsolutions.jts.geom.Geometry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class KartographerAPITest {
+
+    private static final String SHAPES = "{\"type\":\"FeatureCollection\",\"features\":[" +
+            "{\"type\":\"Feature\",\"id\":\"Q1\",\"properties\":{},\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,1]}}," +
+            "{\"type\":\"Feature\",\"id\":\"Q2\",\"properties\":{},\"geometry\":{\"type\":\"Point\",\"coordinates\":[2,2]}}]}";
+    private static final String LINES = "{\"type\":\"FeatureCollection\",\"features\":[" +
+            "{\"type\":\"Feature\",\"id\":\"Q3\",\"properties\":{},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[3,3],[4,4]]}}]}";
+
+    private final AtomicInteger shapeRequests = new AtomicInteger();
+    private final AtomicInteger lineRequests = new AtomicInteger();
+    private HttpServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/geoshape", exchange -> {
+            shapeRequests.incrementAndGet();
+            respond(exchange, SHAPES);
+        });
+        server.createContext("/geoline", exchange -> {
+            lineRequests.incrementAndGet();
+            respond(exchange, LINES);
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConcurrentRequestsAreBatched() throws Exception {
+        KartographerAPI api = new KartographerAPI(URI.create("http://localhost:" + server.getAddress().getPort() + "/"), 500);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Geometry>> shapes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String itemURI = "http://www.wikidata.org/entity/Q" + (i % 4 + 1);
+            shapes.add(executor.submit(() -> api.getShapeForItemId(itemURI)));
+        }
+
+        Assert.assertEquals("Point", shapes.get(0).get().getGeometryType());
+        Assert.assertEquals("Point", shapes.get(1).get().getGeometryType());
+        Assert.assertEquals("LineString", shapes.get(2).get().getGeometryType());
+        Assert.assertTrue(shapes.get(3).get().isEmpty());
+        Assert.assertEquals(1, shapeRequests.get());
+        Assert.assertEquals(1, lineRequests.get());
+        executor.shutdown();
+    }
+
+    private void respond(HttpExchange exchange, String content) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018 Platypus Knowledge Base developers.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.askplatyp.kb.lucene.wikimedia.rest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Thomas Pellissier Tanon
+ */
+public class TwoTierCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicLong time = new AtomicLong(0);
+
+    private String load(String key) {
+        return key + loads.incrementAndGet();
+    }
+
+    private void advance(long seconds) {
+        time.addAndGet(TimeUnit.SECONDS.toMillis(seconds));
+    }
+
+    @Test
+    public void testHeapTier() throws IOException {
+        TwoTierCache<String> cache = buildCache(3600, 3600, 0, null);
+        Assert.assertEquals("a1", cache.get("a", this::load));
+        Assert.assertEquals("a1", cache.get("a", this::load));
+        Assert.assertEquals("a1", cache.get("a", this::load));
+
+        Assert.assertEquals(3, (long) cache.getStatistics().get("requests"));
+        Assert.assertEquals(2, (long) cache.getStatistics().get("heapHits"));
+        Assert.assertEquals(1, (long) cache.getStatistics().get("misses"));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testPersistentTier() throws IOException {
+        ConcurrentMap<String, String> persistentMap = new ConcurrentHashMap<>();
+        buildCache(3600, 3600, 0, persistentMap).get("a", this::load);
+        Assert.assertEquals(Collections.singletonMap("a", "0|a1"), persistentMap);
+
+        TwoTierCache<String> cache = buildCache(3600, 3600, 0, persistentMap);
+        Assert.assertEquals("a1", cache.get("a", this::load));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, (long) cache.getStatistics().get("persistentHits"));
+        Assert.assertEquals(0, (long) cache.getStatistics().get("heapHits"));
+        Assert.assertEquals(0, (long) cache.getStatistics().get("misses"));
+
+        advance(3600);
+        Assert.assertEquals("a2", buildCache(3600, 3600, 0, persistentMap).get("a", this::load));
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws IOException {
+        TwoTierCache<String> cache = buildCache(10, 10, 3600, null);
+        Assert.assertEquals("a1", cache.get("a", this::load));
+        advance(10);
+        Assert.assertEquals("a1", cache.get("a", this::load));
+        Assert.assertEquals("a2", cache.get("a", this::load));
+
+        Assert.assertEquals(1, (long) cache.getStatistics().get("staleHits"));
+        Assert.assertEquals(1, (long) cache.getStatistics().get("refreshes"));
+        Assert.assertEquals(1, (long) cache.getStatistics().get("heapHits"));
+
+        advance(10 + 3600);
+        Assert.assertEquals("a3", cache.get("a", this::load));
+        Assert.assertEquals(2, (long) cache.getStatistics().get("misses"));
+    }
+
+    @Test
+    public void testNegativeTimeToLive() throws IOException {
+        TwoTierCache<String> cache = buildCache(3600, 10, 0, null);
+        cache.get("", key -> "");
+        cache.get("", key -> "");
+        cache.get("a", this::load);
+        advance(10);
+        cache.get("", key -> "");
+        cache.get("a", this::load);
+
+        Assert.assertEquals(3, (long) cache.getStatistics().get("misses"));
+        Assert.assertEquals(2, (long) cache.getStatistics().get("heapHits"));
+    }
+
+    @Test
+    public void testSweep() throws IOException {
+        ConcurrentMap<String, String> persistentMap = new ConcurrentHashMap<>();
+        TwoTierCache<String> cache = buildCache(10, 10, 5, persistentMap);
+        cache.get("a", this::load);
+        advance(10);
+        cache.get("b", this::load);
+        advance(5);
+        cache.sweep();
+        Assert.assertEquals(Collections.singleton("b"), persistentMap.keySet());
+        Assert.assertEquals(1, (long) cache.getStatistics().get("sweptEntries"));
+
+        // The sweeps are also done regularly when the cache is used
+        advance(3600);
+        cache.get("c", this::load);
+        Assert.assertEquals(Collections.singleton("c"), persistentMap.keySet());
+        Assert.assertEquals(2, (long) cache.getStatistics().get("sweptEntries"));
+    }
+
+    private TwoTierCache<String> buildCache(long timeToLive, long negativeTimeToLive, long staleTime, ConcurrentMap<String, String> persistentMap) {
+        return new TwoTierCache<>(
+                raw -> raw, String::isEmpty, timeToLive, negativeTimeToLive, staleTime, 16, persistentMap,
+                time::get, Runnable::run
+        );
+    }
+}